@@ -0,0 +1,145 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The code and apostrophe fix on a large code heavy post. "legacy" repeats
+ * the old loop that searched from the start and replaced in place for every
+ * match. The setup checks that both give the same HTML, on the post and on
+ * generated snippets with nested blocks and missing closing tags
+ *
+ * @author stw
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class CodeFixBenchmark {
+
+    private static final String CODE_CLOSE = "</code></pre>";
+
+    /**
+     * The fix as it was before the single pass
+     *
+     * @param html
+     *            converted Markdown
+     * @return the fixed html
+     * @throws StringIndexOutOfBoundsException
+     *             when an opening tag has no closing one
+     */
+    static String legacyFix(final String html) {
+        final StringBuilder result = new StringBuilder(html);
+        final String searchFor = "<pre><code class=\"language-";
+        final String searchForClose = CodeFixBenchmark.CODE_CLOSE;
+        while (result.indexOf(searchFor) > -1) {
+            final int startPos = result.indexOf(searchFor);
+            final int secondPart = result.indexOf(searchForClose, startPos);
+            result.replace(secondPart, secondPart + searchForClose.length(), "</pre>");
+            result.replace(startPos, startPos + searchFor.length(), "<pre class=\"brush: ");
+        }
+        while (result.indexOf("&rsquo;") > -1) {
+            final int startPos = result.indexOf("&rsquo;");
+            result.replace(startPos, startPos + "&rsquo;".length(), "'");
+        }
+        return result.toString();
+    }
+
+    /**
+     * Fails the setup when the single pass gives other HTML than the old
+     * loop. The old loop throws on an opening tag without a closing one, so
+     * those get closing tags appended until it doesn't, and the single pass
+     * has to give the same HTML minus the closing tags
+     *
+     * @param html
+     *            converted Markdown
+     */
+    static void checkSameResult(final String html) {
+        String closed = html;
+        final StringBuilder appended = new StringBuilder();
+        String expected = null;
+        while (expected == null) {
+            try {
+                expected = CodeFixBenchmark.legacyFix(closed);
+            } catch (final StringIndexOutOfBoundsException e) {
+                closed += CodeFixBenchmark.CODE_CLOSE;
+                appended.append("</pre>");
+            }
+        }
+        final String actual = MarkdownConverter.fixCodeHTML(html) + appended;
+        if (!expected.equals(actual) || !expected.equals(MarkdownConverter.fixCodeHTML(closed))) {
+            throw new IllegalStateException("fixCodeHTML differs from the old loop for: " + html);
+        }
+    }
+
+    @Param({ "1048576" })
+    public int size;
+
+    private String html;
+    private String markdown;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final CorpusGenerator generator = new CorpusGenerator(1, 0, 1);
+        this.html = generator.codeHeavyHtml(this.size);
+        this.markdown = generator.codeHeavyMarkdown(this.size);
+        CodeFixBenchmark.checkSameResult(this.html);
+        final List<String> snippets = generator.codeFixSnippets(100000);
+        snippets.forEach(CodeFixBenchmark::checkSameResult);
+    }
+
+    @Benchmark
+    public String legacy() {
+        return CodeFixBenchmark.legacyFix(this.html);
+    }
+
+    @Benchmark
+    public String singlePass() {
+        return MarkdownConverter.fixCodeHTML(this.html);
+    }
+
+    /**
+     * Conversion and fix together, to see the share of the fix
+     */
+    @Benchmark
+    public String markdownToHtml() {
+        return MarkdownConverter.markdown2HtmlWithCode(this.markdown);
+    }
+}
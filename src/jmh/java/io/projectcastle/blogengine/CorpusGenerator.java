@@ -0,0 +1,299 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.io.Files;
+import com.google.common.io.MoreFiles;
+import com.google.common.io.RecursiveDeleteOption;
+
+/**
+ * Creates a synthetic blog for the benchmarks: N entries with M comments
+ * each, spread over K categories. The same parameters always produce the
+ * same corpus
+ *
+ * @author stw
+ *
+ */
+public class CorpusGenerator {
+
+    private static final String[] WORDS = { "domino", "java", "singapore", "notes", "agile", "architecture",
+            "twins", "xpages", "vert.x", "stream", "render", "template", "it's", "don't", "performance", "blog" };
+
+    /**
+     * Points the configuration singleton to a scratch directory, so the
+     * benchmarks never touch a real blog or the working directory
+     *
+     * @param workDir
+     *            scratch directory
+     * @return the configuration
+     */
+    public static Config benchmarkConfig(final File workDir) {
+        workDir.mkdirs();
+        final Config config = Config.get(new File(workDir, Config.CONFIG_NAME).getAbsolutePath(), false);
+        config.sourceDirectory = new File(workDir, "src").getAbsolutePath() + "/";
+        config.templateDirectory = new File(workDir, "layouts").getAbsolutePath() + "/";
+        config.destinationDirectory = new File(workDir, "www/blog").getAbsolutePath() + "/";
+        return config;
+    }
+
+    /**
+     * Removes the scratch directory of a benchmark
+     *
+     * @param workDir
+     *            directory created by the benchmark
+     */
+    public static void deleteWorkDir(final File workDir) {
+        try {
+            MoreFiles.deleteRecursively(workDir.toPath(), RecursiveDeleteOption.ALLOW_INSECURE);
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private final int entries;
+    private final int commentsPerEntry;
+    private final int categories;
+
+    public CorpusGenerator(final int entries, final int commentsPerEntry, final int categories) {
+        this.entries = entries;
+        this.commentsPerEntry = commentsPerEntry;
+        this.categories = categories;
+    }
+
+    /**
+     * @param i
+     *            number of the entry
+     * @return the .blog source of one entry, Markdown with a code block and
+     *         a more section for every third entry
+     */
+    public String blogSource(final int i) {
+        final Random random = new Random(i);
+        final StringBuilder b = new StringBuilder();
+        b.append(BlogEntry.MARKDOW_SEPARATOR).append("\n");
+        b.append("Author: Stephan H. Wissel\n");
+        b.append("Category:\n");
+        final int catCount = 1 + random.nextInt(3);
+        for (int c = 0; c < catCount; c++) {
+            b.append("- Category ").append((i + (c * 7)) % this.categories).append("\n");
+        }
+        b.append(String.format("PublishDate: \"%04d-%02d-%02dT%02d:%02d:00Z\"\n", 2003 + (i % 16), 1 + (i % 12),
+                1 + (i % 28), i % 24, i % 60));
+        b.append("Location: Singapore\n");
+        b.append("Status: Published\n");
+        b.append("Title: Entry ").append(i).append(" about ").append(this.words(random, 3)).append("\n");
+        b.append("UNID: ").append(this.unid(i)).append("\n");
+        b.append("URL: ").append(2003 + (i % 16)).append("/entry-").append(i).append(".html\n");
+        if ((i % 5) == 0) {
+            b.append("Series: Series ").append(i % 4).append("\n");
+        }
+        b.append("SourceType: Markdown\n");
+        b.append(BlogEntry.MARKDOW_SEPARATOR).append("\n");
+        this.markdownBody(random, b, 4);
+        if ((i % 3) == 0) {
+            b.append(BlogEntry.MARKDOW_SEPARATOR).append("\n");
+            this.markdownBody(random, b, 2);
+        }
+        return b.toString();
+    }
+
+    /**
+     * @param i
+     *            number of the entry
+     * @param c
+     *            number of the comment
+     * @return the JSON of one comment
+     */
+    public String commentJson(final int i, final int c) {
+        final Random random = new Random((i * 1000L) + c);
+        return "{\"author\":\"Reader " + c + "\",\"parentId\":\"" + this.unid(i) + "\",\"unid\":\"" + this.unid(i)
+                + "-" + c + "\",\"markdown\":" + ((c % 2) == 0) + ",\"body\":\"" + this.words(random, 40)
+                + "\",\"created\":\"Oct 3, 2017 2:07:04 PM\"}";
+    }
+
+    /**
+     * @param i
+     *            number of the entry
+     * @return the parsed and converted entry
+     */
+    public BlogEntry entry(final int i) {
+        final BlogEntry result = BlogEntry
+                .loadDataFromBlog(new ByteArrayInputStream(this.blogSource(i).getBytes(StandardCharsets.UTF_8)));
+        result.setSourceFileName("entry-" + i + ".blog");
+        return result;
+    }
+
+    /**
+     * @return all entries, parsed and converted
+     */
+    public List<BlogEntry> entries() {
+        final List<BlogEntry> result = new ArrayList<>(this.entries);
+        for (int i = 0; i < this.entries; i++) {
+            result.add(this.entry(i));
+        }
+        return result;
+    }
+
+    /**
+     * @return a Markdown text of roughly blog post size
+     */
+    public String markdownText() {
+        final StringBuilder b = new StringBuilder();
+        this.markdownBody(new Random(42), b, 8);
+        return b.toString();
+    }
+
+    /**
+     * @param size
+     *            length in characters
+     * @return a Markdown post made of short paragraphs with apostrophes and
+     *         code blocks
+     */
+    public String codeHeavyMarkdown(final int size) {
+        final Random random = new Random(42);
+        final StringBuilder b = new StringBuilder(size + 1024);
+        while (b.length() < size) {
+            b.append("Here's why it's ").append(this.words(random, 12)).append("\n\n");
+            b.append("```java\n");
+            b.append("public String render(final BlogEntry be) {\n");
+            b.append("    return be.getTitle();\n");
+            b.append("}\n```\n\n");
+        }
+        return b.toString();
+    }
+
+    /**
+     * @param size
+     *            length in characters
+     * @return HTML shaped like what flexmark renders for codeHeavyMarkdown,
+     *         before the code fix
+     */
+    public String codeHeavyHtml(final int size) {
+        final Random random = new Random(42);
+        final StringBuilder b = new StringBuilder(size + 1024);
+        while (b.length() < size) {
+            b.append("<p>Here&rsquo;s why it&rsquo;s ").append(this.words(random, 12)).append("</p>\n");
+            b.append("<pre><code class=\"language-java\">public String render(final BlogEntry be) {\n");
+            b.append("    return be.getTitle();\n");
+            b.append("}\n</code></pre>\n");
+        }
+        return b.toString();
+    }
+
+    /**
+     * @param count
+     *            number of snippets
+     * @return short HTML snippets mixing code blocks, stray and missing
+     *         closing tags, nested blocks and apostrophes in random order
+     */
+    public List<String> codeFixSnippets(final int count) {
+        final String[] parts = { "<pre><code class=\"language-java\">", "</code></pre>", "&rsquo;", "text ",
+                "<p>", "</p>\n" };
+        final Random random = new Random(42);
+        final List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final StringBuilder b = new StringBuilder();
+            final int length = random.nextInt(12);
+            for (int p = 0; p < length; p++) {
+                b.append(parts[random.nextInt(parts.length)]);
+            }
+            result.add(b.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Writes the corpus in the layout BlogEngine expects
+     *
+     * @param config
+     *            configuration with the directories to write to
+     * @throws IOException
+     */
+    public void writeTo(final Config config) throws IOException {
+        for (int i = 0; i < this.entries; i++) {
+            final File blogFile = new File(config.sourceDirectory + config.documentDirectory + (2003 + (i % 16))
+                    + "/entry-" + i + ".blog");
+            Files.createParentDirs(blogFile);
+            Files.asCharSink(blogFile, StandardCharsets.UTF_8).write(this.blogSource(i));
+            for (int c = 0; c < this.commentsPerEntry; c++) {
+                final File commentFile = new File(
+                        config.sourceDirectory + config.commentDirectory + (i % 100) + "/c" + i + "-" + c + ".json");
+                Files.createParentDirs(commentFile);
+                Files.asCharSink(commentFile, StandardCharsets.UTF_8).write(this.commentJson(i, c));
+            }
+        }
+        this.writeTemplate(config, config.ENTRY_TEMPLATE, CorpusGenerator.ENTRY_TEMPLATE);
+    }
+
+    // A blog entry page close to what a real layout uses
+    static final String ENTRY_TEMPLATE = "<html><head><title>{{title}}</title>"
+            + "<meta name=\"description\" content=\"{{description}}\"></head><body>\n"
+            + "<ul>{{#allCategories}}<li class=\"{{#active}}active{{/active}}\"><a href=\"{{place}}\">{{name}}</a> ({{count}})</li>{{/allCategories}}</ul>\n"
+            + "<ul>{{#allDateCategories}}<li class=\"{{#active}}active{{/active}}\"><a href=\"{{place}}\">{{name}}</a></li>{{/allDateCategories}}</ul>\n"
+            + "<h1>{{title}}</h1><div>{{publishDateString}} {{dateMonth}} {{dateYear}} {{dateURL}}</div>\n"
+            + "{{#displayCategories}}<span>{{name}}</span>{{/displayCategories}}\n"
+            + "<div class=\"body\">{{{mainBody}}}</div>{{#moreBody}}<div class=\"more\">{{{moreBody}}}</div>{{/moreBody}}\n"
+            + "<ul>{{#seriesMember}}<li class=\"{{#active}}active{{/active}}\"><a href=\"{{place}}\">{{name}}</a></li>{{/seriesMember}}</ul>\n"
+            + "{{#comments}}<div class=\"comment\"><b>{{author}}</b> {{createdString}}<div>{{{comment}}}</div></div>{{/comments}}\n"
+            + "{{#previousItem}}<a href=\"{{place}}\">{{name}}</a>{{/previousItem}}{{#nextItem}}<a href=\"{{place}}\">{{name}}</a>{{/nextItem}}\n"
+            + "</body></html>\n";
+
+    void writeTemplate(final Config config, final String name, final String content) throws IOException {
+        final File templateFile = new File(config.templateDirectory + name);
+        Files.createParentDirs(templateFile);
+        Files.asCharSink(templateFile, StandardCharsets.UTF_8).write(content);
+    }
+
+    private void markdownBody(final Random random, final StringBuilder b, final int paragraphs) {
+        for (int p = 0; p < paragraphs; p++) {
+            b.append(this.words(random, 60)).append("\n\n");
+            if ((p % 3) == 1) {
+                b.append("```java\n");
+                b.append("public String render(final BlogEntry be) {\n");
+                b.append("    return \"it's \" + be.getTitle();\n");
+                b.append("}\n```\n\n");
+            }
+        }
+    }
+
+    private String unid(final int i) {
+        return String.format("%032X", i);
+    }
+
+    private String words(final Random random, final int count) {
+        final StringBuilder b = new StringBuilder();
+        for (int w = 0; w < count; w++) {
+            if (w > 0) {
+                b.append(' ');
+            }
+            b.append(CorpusGenerator.WORDS[random.nextInt(CorpusGenerator.WORDS.length)]);
+        }
+        return b.toString();
+    }
+}
@@ -0,0 +1,113 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Date formatting done for one entry page: the date getters the entry
+ * template uses and the sorted comments. "legacy" repeats what the getters
+ * did with a SimpleDateFormat per call. Run with -prof gc to compare
+ * gc.alloc.rate.norm, the bytes allocated per page
+ *
+ * @author stw
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DateFormatBenchmark {
+
+    private static final String[] ENTRY_FORMATS = { "MMMM", "MM", "yyyy/MM", "yyyy", BlogEntry.DATE_FORMAT,
+            "MMMM yyyy" };
+
+    private BlogEntry         entry;
+    private List<BlogComment> comments;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this.entry = new CorpusGenerator(1, 0, 5).entry(0);
+        this.comments = new ArrayList<>();
+        for (int c = 0; c < 10; c++) {
+            final BlogComment comment = new BlogComment();
+            comment.setAuthor("Reader " + c);
+            comment.setCreated(new Date(1507010824000L + (c * 3600000L)));
+            comment.setParentId(this.entry.getUNID());
+            comment.setUNID("comment-" + c);
+            this.entry.addComment(comment);
+            this.comments.add(comment);
+        }
+    }
+
+    @Benchmark
+    public void legacy(final Blackhole blackhole) {
+        final Date publishDate = this.entry.getPublishDate();
+        for (final String format : DateFormatBenchmark.ENTRY_FORMATS) {
+            blackhole.consume(new SimpleDateFormat(format, Locale.US).format(publishDate));
+        }
+        final List<BlogComment> sorted = new ArrayList<>(this.comments);
+        sorted.sort((c1, c2) -> {
+            final SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd-HH-mm-ss-SSS");
+            return (sdf.format(c1.getCreated()) + c1.getAuthor())
+                    .compareTo(sdf.format(c2.getCreated()) + c2.getAuthor());
+        });
+        for (final BlogComment comment : sorted) {
+            blackhole.consume(new SimpleDateFormat("EEEE dd MMMM yyyy GG - HH:mm zzzz").format(comment.getCreated()));
+        }
+    }
+
+    @Benchmark
+    public void memoized(final Blackhole blackhole) {
+        blackhole.consume(this.entry.getDateMonth());
+        blackhole.consume(this.entry.getDateMonthNumber());
+        blackhole.consume(this.entry.getDateURL());
+        blackhole.consume(this.entry.getDateYear());
+        blackhole.consume(this.entry.getPublishDateString());
+        blackhole.consume(this.entry.getPublishDateStringShort());
+        final Set<BlogComment> sorted = this.entry.getComments();
+        for (final BlogComment comment : sorted) {
+            blackhole.consume(comment.getCreatedString());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the load phase: parsing .blog files (YAML and Markdown) and
+ * comment JSON
+ *
+ * @author stw
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LoadBenchmark {
+
+    @Param({ "100" })
+    public int entries;
+
+    @Param({ "5" })
+    public int commentsPerEntry;
+
+    private File     workDir;
+    private byte[][] blogSources;
+    private String   markdown;
+    private String   longPostHtml;
+    private String[] commentFiles;
+    private int      next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.workDir = Files.createTempDirectory("blogengine-jmh").toFile();
+        final Config config = CorpusGenerator.benchmarkConfig(this.workDir);
+        final CorpusGenerator generator = new CorpusGenerator(this.entries, this.commentsPerEntry, 20);
+        generator.writeTo(config);
+        this.markdown = generator.markdownText();
+        this.longPostHtml = generator.codeHeavyHtml(65536);
+        this.blogSources = new byte[this.entries][];
+        this.commentFiles = new String[this.entries];
+        for (int i = 0; i < this.entries; i++) {
+            this.blogSources[i] = generator.blogSource(i).getBytes(StandardCharsets.UTF_8);
+            this.commentFiles[i] = config.sourceDirectory + config.commentDirectory + (i % 100) + "/c" + i + "-0.json";
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CorpusGenerator.deleteWorkDir(this.workDir);
+    }
+
+    /**
+     * One .blog file: YAML header, Markdown conversion and code fixup
+     */
+    @Benchmark
+    public BlogEntry parseBlogEntry() {
+        final byte[] source = this.blogSources[this.nextIndex()];
+        return BlogEntry.loadDataFromBlog(new ByteArrayInputStream(source));
+    }
+
+    /**
+     * Markdown conversion only, roughly one blog post
+     */
+    @Benchmark
+    public String markdownToHtml() {
+        return MarkdownConverter.markdown2HtmlWithCode(this.markdown);
+    }
+
+    /**
+     * The description of a long post, the first 200 characters of its text
+     */
+    @Benchmark
+    public String descriptionOfLongPost() {
+        return Utils.getTextFromHTML(this.longPostHtml, 200);
+    }
+
+    /**
+     * One comment file from disk
+     */
+    @Benchmark
+    public void loadComment(final Blackhole blackhole) {
+        blackhole.consume(BlogComment.loadFromJson(this.commentFiles[this.nextIndex()]));
+    }
+
+    private int nextIndex() {
+        this.next = (this.next + 1) % this.entries;
+        return this.next;
+    }
+}
@@ -0,0 +1,170 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the heap the loaded model keeps: every entry parsed and
+ * converted, once with its HTML and once released like in a low memory
+ * build. The baseline layout adds what an entry held before allBody was
+ * dropped and its metadata got interned, so current against baseline is
+ * the saving. The time is of little interest, look at retainedBytesPer10k
+ *
+ * @author stw
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = { "-Xmx2g" })
+public class MemoryFootprintBenchmark {
+
+    /**
+     * Heap kept by the model after a full garbage collection, scaled to
+     * 10000 entries
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Footprint {
+        public long retainedBytesPer10k;
+    }
+
+    @Param({ "10000" })
+    public int entries;
+
+    /**
+     * "current" keeps the entries as they are, "baseline" also keeps the
+     * concatenated body and a private copy of every metadata string
+     */
+    @Param({ "current", "baseline" })
+    public String layout;
+
+    private byte[][] blogSources;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final CorpusGenerator generator = new CorpusGenerator(this.entries, 0, 20);
+        this.blogSources = new byte[this.entries][];
+        for (int i = 0; i < this.entries; i++) {
+            this.blogSources[i] = generator.blogSource(i).getBytes(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * All entries with their HTML, as in a regular build
+     */
+    @Benchmark
+    public List<Object> loadedEntries(final Footprint footprint) {
+        return this.load(footprint, false);
+    }
+
+    /**
+     * All entries with metadata, description and comment count only
+     */
+    @Benchmark
+    public List<Object> releasedEntries(final Footprint footprint) {
+        return this.load(footprint, true);
+    }
+
+    private List<Object> load(final Footprint footprint, final boolean release) {
+        final boolean baseline = "baseline".equals(this.layout);
+        final long before = MemoryFootprintBenchmark.usedHeap();
+        final List<BlogEntry> loaded = new ArrayList<>(this.entries);
+        final List<String> legacy = new ArrayList<>(baseline ? this.entries * 8 : 0);
+        for (final byte[] source : this.blogSources) {
+            final BlogEntry be = BlogEntry.loadDataFromBlog(new ByteArrayInputStream(source));
+            if (release) {
+                be.releaseContent();
+            }
+            loaded.add(be);
+            if (baseline) {
+                MemoryFootprintBenchmark.addLegacyFields(be, legacy);
+            }
+        }
+        final long after = MemoryFootprintBenchmark.usedHeap();
+        footprint.retainedBytesPer10k = ((after - before) * 10000L) / this.entries;
+        final List<Object> result = new ArrayList<>(2);
+        result.add(loaded);
+        result.add(legacy);
+        return result;
+    }
+
+    // What the entry kept on its own before: allBody as a separate string
+    // (it was mainBody itself when there was no more part) and metadata
+    // strings parsed fresh for every entry
+    private static void addLegacyFields(final BlogEntry be, final List<String> legacy) {
+        if (be.getMoreBody() != null) {
+            legacy.add(be.getAllBody());
+        }
+        legacy.add(MemoryFootprintBenchmark.copy(be.getAuthor()));
+        legacy.add(MemoryFootprintBenchmark.copy(be.getLocation()));
+        legacy.add(MemoryFootprintBenchmark.copy(be.getStatus()));
+        legacy.add(MemoryFootprintBenchmark.copy(be.getSeries()));
+        legacy.add(MemoryFootprintBenchmark.copy(be.getSourceType()));
+        for (final String category : be.getCategory()) {
+            legacy.add(MemoryFootprintBenchmark.copy(category));
+        }
+    }
+
+    // new String(String) would share the characters, this doesn't
+    private static String copy(final String value) {
+        return (value == null) ? null : new String(value.toCharArray());
+    }
+
+    // Used heap once the garbage collector has nothing left to collect
+    private static long usedHeap() {
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            System.gc();
+            final long current = memory.getHeapMemoryUsage().getUsed();
+            if (current >= used) {
+                return current;
+            }
+            used = current;
+        }
+        return used;
+    }
+}
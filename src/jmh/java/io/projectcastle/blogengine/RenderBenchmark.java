@@ -0,0 +1,164 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.mustachejava.Mustache;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Measures the render phase: Mustache rendering of an entry page, writing
+ * it through BlogOutput in each output mode and writing the RSS feed
+ *
+ * @author stw
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RenderBenchmark {
+
+    @Param({ "100" })
+    public int entries;
+
+    @Param({ "jsoup", "normalize", "passthrough" })
+    public String htmlOutputMode;
+
+    @Param({ "true", "false" })
+    public boolean streaming;
+
+    private File            workDir;
+    private Config          config;
+    private Mustache        mustache;
+    private List<BlogEntry> blogEntries;
+    private PageNavigation  navigation;
+    private BlogIndex       rssIndex;
+    private HtmlOutputMode  mode;
+    private int             next = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.workDir = Files.createTempDirectory("blogengine-jmh").toFile();
+        this.config = CorpusGenerator.benchmarkConfig(this.workDir);
+        final CorpusGenerator generator = new CorpusGenerator(this.entries, 5, 20);
+        generator.writeTo(this.config);
+        this.blogEntries = generator.entries();
+        this.mode = HtmlOutputMode.fromConfig(this.htmlOutputMode);
+        this.mustache = new TemplateRegistry(this.config.templateDirectory).get(this.config.ENTRY_TEMPLATE);
+
+        // Navigation as BlogEngine builds it, one shared list per kind
+        final Map<String, LinkItem> categories = new TreeMap<>();
+        final Map<String, LinkItem> years = new TreeMap<>();
+        for (final BlogEntry be : this.blogEntries) {
+            for (final String catName : be.getCategory()) {
+                final LinkItem cat = new LinkItem(catName);
+                if (categories.containsKey(cat.place)) {
+                    categories.get(cat.place).count++;
+                } else {
+                    categories.put(cat.place, cat);
+                }
+            }
+            years.putIfAbsent(be.getDateYear(), new LinkItem(be.getDateYear()));
+        }
+        this.navigation = new PageNavigation();
+        this.navigation.allCategories = PageNavigation.markActive(categories.values(),
+                Collections.singleton(categories.values().iterator().next()));
+        this.navigation.allDateCategories = years.values();
+
+        this.rssIndex = new BlogIndex();
+        this.rssIndex.topArticles = new BlogEntryCollection(true);
+        this.rssIndex.topArticles.addAll(this.blogEntries.subList(0, Math.min(this.config.entriesInRSS, this.entries)));
+
+        new File(this.config.destinationDirectory).mkdirs();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CorpusGenerator.deleteWorkDir(this.workDir);
+    }
+
+    /**
+     * Mustache only, into memory
+     */
+    @Benchmark
+    public String renderEntry() {
+        final StringWriter result = new StringWriter();
+        this.mustache.execute(result, new Object[] { this.nextEntry(), this.navigation });
+        return result.toString();
+    }
+
+    /**
+     * Mustache into BlogOutput and disk. The pages don't change between
+     * invocations, so this measures the common case of an unchanged page
+     */
+    @Benchmark
+    public void writeEntry() throws IOException {
+        final BlogEntry be = this.nextEntry();
+        final String location = this.config.destinationDirectory + be.getSourceFileName() + ".html";
+        final BlogOutput out = new BlogOutput(location, this.mode, this.streaming, null);
+        final Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        this.mustache.execute(writer, new Object[] { be, this.navigation });
+        writer.close();
+    }
+
+    /**
+     * The RSS feed, without disk access
+     */
+    @Benchmark
+    public void writeRss() throws Exception {
+        new RSSFeedWriter(this.config, this.rssIndex).write(ByteStreams.nullOutputStream());
+    }
+
+    private BlogEntry nextEntry() {
+        this.next = (this.next + 1) % this.blogEntries.size();
+        return this.blogEntries.get(this.next);
+    }
+}
@@ -22,10 +22,11 @@
 package io.projectcastle.blogengine;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Reader;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
@@ -39,68 +40,24 @@ import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 
-public class BlogComment implements Comparable<BlogComment> {
+public class BlogComment implements Serializable, Comparable<BlogComment> {
+
+    private static final long serialVersionUID = 1L;
 
     private final static String GRAVATAR_URL        = "//www.gravatar.com/avatar/";
     private final static String GRAVATAR_SIZE       = "88";                               // Pixels
-    private final static String DISPLAY_DATE_FORMAT = "EEEE dd MMMM yyyy GG - HH:mm zzzz";
     private final static String IMPORT_DATE_FORMAT = "MMMM dd, yyyy HH:mm:ss a";
-    private final static String COMPARE_DATE_FORMAT = "yyyy-MM-dd-HH-mm-ss-SSS";
 
     public static BlogComment loadFromJson(final File commentFile) {
         final BlogComment result = new BlogComment();
         if (commentFile.exists() && commentFile.isFile()) {
             try {
-                result.setCreated(new Date(commentFile.lastModified()));
-                final Reader in = new FileReader(commentFile);
-                final JsonParser parser = new JsonParser();
-                final JsonElement je = parser.parse(in);
+                // Comment files are UTF-8, like the packs they end up in
+                final Reader in = java.nio.file.Files.newBufferedReader(commentFile.toPath(), StandardCharsets.UTF_8);
+                final BlogComment loaded = BlogComment.loadFromJson(in, commentFile.getAbsolutePath(),
+                        new Date(commentFile.lastModified()));
                 in.close();
-                final JsonObject rawComment = je.getAsJsonObject();
-
-                rawComment.entrySet().forEach(entry -> {
-
-                    final String eName = entry.getKey().toLowerCase();
-                    final JsonElement value = entry.getValue();
-                    try {
-                        if ("commentor".equals(eName) || "author".equals(eName)) {
-                            result.setAuthor(value.getAsString());
-                        } else if ("website".equals(eName) || "url".equals(eName)) {
-                            result.setWebSite(value.getAsString());
-                        } else if ("body".equals(eName) || "comment".equals(eName)) {
-                            result.setComment(value.getAsString());
-                        } else if ("parentid".equals(eName)) {
-                            result.setParentId(value.getAsString());
-                        } else if ("unid".equals(eName) || "commentid".equals(eName)) {
-                            result.setUNID(value.getAsString());
-                        } else if ("markdown".equals(eName)) {
-                            result.setMarkdown(value.getAsBoolean());
-                        } else if ("created".equals(eName)) {
-                            SimpleDateFormat sdf = new SimpleDateFormat(IMPORT_DATE_FORMAT, Locale.US);
-                            // "Oct 3, 2017 2:07:04 PM"
-                            Date someDate = sdf.parse(value.getAsString());
-                            result.setCreated(someDate);
-                        }
-                    } catch (Exception e) {
-                        System.err.println(eName + " didn't work:" + e.getMessage());
-                    }
-
-                });
-
-                // Cleanup the mark
-                if (result.isMarkdown()) {
-                    final String markdownText = result.getComment();
-                    if (markdownText != null) {
-                        final String htmlText = MarkdownConverter.markdown2HtmlWithCode(markdownText);
-                        result.setComment(htmlText);
-                    }
-                }
-                
-                // UUID - just in case
-                if (result.getUNID() == null) {
-                    result.setUNID(UUID.randomUUID().toString());
-                }
-                
+                return loaded;
             } catch (final Exception e) {
                 e.printStackTrace();
                 result.setValid(false);
@@ -112,6 +69,97 @@ public class BlogComment implements Comparable<BlogComment> {
         return result;
     }
 
+    /**
+     * Reads one comment file whose content was read by the caller
+     *
+     * @param in
+     *            the content of the comment file
+     * @param sourceFileName
+     *            where the comment was loaded from
+     * @param fileModified
+     *            date of the file, used when the JSON has no created date
+     * @return the comment, not valid if the JSON is broken
+     */
+    public static BlogComment loadFromJson(final Reader in, final String sourceFileName, final Date fileModified) {
+        try {
+            final JsonElement je = JsonParser.parseReader(in);
+            return BlogComment.loadFromJson(je.getAsJsonObject(), sourceFileName, fileModified);
+        } catch (final Exception e) {
+            e.printStackTrace();
+            final BlogComment result = new BlogComment();
+            result.setValid(false);
+            return result;
+        }
+    }
+
+    /**
+     * Reads one comment from its JSON, as found in a comment file or a line
+     * of a comment pack
+     *
+     * @param rawComment
+     *            the JSON of the comment
+     * @param sourceFileName
+     *            where the comment was loaded from
+     * @param fallbackCreated
+     *            used when the JSON has no created date
+     * @return the comment
+     */
+    public static BlogComment loadFromJson(final JsonObject rawComment, final String sourceFileName,
+            final Date fallbackCreated) {
+        final BlogComment result = new BlogComment();
+        result.setCreated(fallbackCreated);
+        result.setSourceFileName(sourceFileName);
+        try {
+            rawComment.entrySet().forEach(entry -> {
+
+                final String eName = entry.getKey().toLowerCase();
+                final JsonElement value = entry.getValue();
+                try {
+                    if ("commentor".equals(eName) || "author".equals(eName)) {
+                        result.setAuthor(value.getAsString());
+                    } else if ("website".equals(eName) || "url".equals(eName)) {
+                        result.setWebSite(value.getAsString());
+                    } else if ("body".equals(eName) || "comment".equals(eName)) {
+                        result.setComment(value.getAsString());
+                    } else if ("parentid".equals(eName)) {
+                        result.setParentId(value.getAsString());
+                    } else if ("unid".equals(eName) || "commentid".equals(eName)) {
+                        result.setUNID(value.getAsString());
+                    } else if ("markdown".equals(eName)) {
+                        result.setMarkdown(value.getAsBoolean());
+                    } else if ("created".equals(eName)) {
+                        SimpleDateFormat sdf = new SimpleDateFormat(IMPORT_DATE_FORMAT, Locale.US);
+                        // "Oct 3, 2017 2:07:04 PM"
+                        Date someDate = sdf.parse(value.getAsString());
+                        result.setCreated(someDate);
+                    }
+                } catch (Exception e) {
+                    System.err.println(eName + " didn't work:" + e.getMessage());
+                }
+
+            });
+
+            // Cleanup the mark
+            if (result.isMarkdown()) {
+                final String markdownText = result.getComment();
+                if (markdownText != null) {
+                    final String htmlText = MarkdownConverter.markdown2HtmlWithCode(markdownText);
+                    result.setComment(htmlText);
+                }
+            }
+            
+            // UUID - just in case
+            if (result.getUNID() == null) {
+                result.setUNID(UUID.randomUUID().toString());
+            }
+
+        } catch (final Exception e) {
+            e.printStackTrace();
+            result.setValid(false);
+        }
+        return result;
+    }
+
     public static BlogComment loadFromJson(final String fileName) {
         final File commentFile = new File(fileName);
         return BlogComment.loadFromJson(commentFile);
@@ -132,14 +180,21 @@ public class BlogComment implements Comparable<BlogComment> {
     private String  webSite;
     private String  gravatarURL;
 
+    // Where the comment was loaded from, not part of the JSON
+    private transient String sourceFileName;
+
+    // Compare key and display string of created, computed once per date
+    private transient CreatedStrings createdStrings;
+
     @Override
     public int compareTo(final BlogComment externalComment) {
-        final SimpleDateFormat sdf = new SimpleDateFormat(BlogComment.COMPARE_DATE_FORMAT);
-        final String ownDate = sdf.format(this.getCreated());
-        final String externalDate = sdf.format(externalComment.getCreated());
-        final String ownCompare = ownDate + String.valueOf(this.getAuthor());
-        final String externalCompare = externalDate + String.valueOf(externalComment.getAuthor());
-        return ownCompare.compareTo(externalCompare);
+        // Same order as formatting created as yyyy-MM-dd-HH-mm-ss-SSS + author
+        final int result = Long.compare(this.getCreatedStrings().compareKey,
+                externalComment.getCreatedStrings().compareKey);
+        if (result != 0) {
+            return result;
+        }
+        return String.valueOf(this.getAuthor()).compareTo(String.valueOf(externalComment.getAuthor()));
     }
 
     /**
@@ -167,8 +222,7 @@ public class BlogComment implements Comparable<BlogComment> {
      * @return the created Date as String
      */
     public String getCreatedString() {
-        final SimpleDateFormat sdf = new SimpleDateFormat(BlogComment.DISPLAY_DATE_FORMAT);
-        return sdf.format(this.created);
+        return this.getCreatedStrings().display;
     }
 
     /**
@@ -208,6 +262,13 @@ public class BlogComment implements Comparable<BlogComment> {
         return this.remoteAddress;
     }
 
+    /**
+     * @return the file the comment was loaded from
+     */
+    public String getSourceFileName() {
+        return this.sourceFileName;
+    }
+
     /**
      * @return the uNID
      */
@@ -334,6 +395,14 @@ public class BlogComment implements Comparable<BlogComment> {
         this.remoteAddress = remoteAddress;
     }
 
+    /**
+     * @param sourceFileName
+     *            the file the comment was loaded from
+     */
+    public void setSourceFileName(final String sourceFileName) {
+        this.sourceFileName = sourceFileName;
+    }
+
     /**
      * @param uNID
      *            the uNID to set
@@ -380,4 +449,29 @@ public class BlogComment implements Comparable<BlogComment> {
         return gson.toJson(this);
     }
 
+
+    private CreatedStrings getCreatedStrings() {
+        final CreatedStrings current = this.createdStrings;
+        if ((current != null) && (current.date == this.created)) {
+            return current;
+        }
+        final CreatedStrings result = new CreatedStrings(this.created);
+        this.createdStrings = result;
+        return result;
+    }
+
+    /**
+     * Derived from the created date, immutable so render threads can share it
+     */
+    private static final class CreatedStrings {
+        final Date   date;
+        final long   compareKey;
+        final String display;
+
+        CreatedStrings(final Date date) {
+            this.date = date;
+            this.compareKey = BlogDates.localTimeKey(date);
+            this.display = BlogDates.formatComment(date);
+        }
+    }
 }
@@ -0,0 +1,115 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DecimalStyle;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Shared date formatting. java.time formatters are immutable and thread
+ * safe, so they are created once instead of a SimpleDateFormat per call.
+ * The output is identical to the SimpleDateFormat patterns used before
+ *
+ * @author stw
+ *
+ */
+public class BlogDates {
+
+    public static final DateTimeFormatter MONTH_NAME      = DateTimeFormatter.ofPattern("MMMM", Locale.US);
+    public static final DateTimeFormatter MONTH_NUMBER    = DateTimeFormatter.ofPattern("MM", Locale.US);
+    public static final DateTimeFormatter YEAR_MONTH_PATH = DateTimeFormatter.ofPattern("yyyy/MM", Locale.US);
+    public static final DateTimeFormatter YEAR            = DateTimeFormatter.ofPattern("yyyy", Locale.US);
+    public static final DateTimeFormatter MONTH_YEAR      = DateTimeFormatter.ofPattern("MMMM yyyy", Locale.US);
+    public static final DateTimeFormatter ENTRY_DATE      = DateTimeFormatter.ofPattern(BlogEntry.DATE_FORMAT,
+            Locale.US);
+    // BlogComment display without the zone name, in the default locale
+    private static final DateTimeFormatter COMMENT_DATE   = DateTimeFormatter.ofPattern("EEEE dd MMMM yyyy GG - HH:mm ")
+            .withDecimalStyle(DecimalStyle.ofDefaultLocale());
+    public static final DateTimeFormatter RSS_DATE        = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss Z", Locale.US);
+    // Utils.DATE_COMPARE_FORMAT without the unpadded milliseconds
+    private static final DateTimeFormatter COMPARE_PREFIX = DateTimeFormatter.ofPattern("yyyy-DDD-HH-mm-ss-",
+            Locale.US);
+
+    /**
+     * @param date
+     *            the date
+     * @param formatter
+     *            one of the formatters above
+     * @return the date in the default time zone
+     */
+    public static String format(final Date date, final DateTimeFormatter formatter) {
+        return formatter.format(BlogDates.atDefaultZone(date));
+    }
+
+    /**
+     * @param date
+     *            the date
+     * @return same result as Utils.DATE_COMPARE_FORMAT, where "S" prints the
+     *         milliseconds without padding
+     */
+    public static String formatComparable(final Date date) {
+        final ZonedDateTime zoned = BlogDates.atDefaultZone(date);
+        return BlogDates.COMPARE_PREFIX.format(zoned) + (zoned.getNano() / 1_000_000);
+    }
+
+    /**
+     * @param date
+     *            the date
+     * @return same result as "EEEE dd MMMM yyyy GG - HH:mm zzzz". The zone
+     *         name comes from TimeZone, java.time names some legacy zone IDs
+     *         differently
+     */
+    public static String formatComment(final Date date) {
+        final TimeZone zone = TimeZone.getDefault();
+        final Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        return BlogDates.COMMENT_DATE.format(date.toInstant().atZone(zone.toZoneId()))
+                + zone.getDisplayName(zone.inDaylightTime(date), TimeZone.LONG, locale);
+    }
+
+    /**
+     * @param date
+     *            the date
+     * @return local time as yyyyMMddHHmmssSSS number, same order as the
+     *         formatted string
+     */
+    public static long localTimeKey(final Date date) {
+        final LocalDateTime local = BlogDates.atDefaultZone(date).toLocalDateTime();
+        long result = local.getYear();
+        result = (result * 100) + local.getMonthValue();
+        result = (result * 100) + local.getDayOfMonth();
+        result = (result * 100) + local.getHour();
+        result = (result * 100) + local.getMinute();
+        result = (result * 100) + local.getSecond();
+        return (result * 1000) + (local.getNano() / 1_000_000);
+    }
+
+    private static ZonedDateTime atDefaultZone(final Date date) {
+        return date.toInstant().atZone(ZoneId.systemDefault());
+    }
+}
@@ -21,42 +21,70 @@
  */
 package io.projectcastle.blogengine;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.codec.digest.DigestUtils;
 import org.joda.time.Duration;
 
-import com.github.mustachejava.DefaultMustacheFactory;
 import com.github.mustachejava.Mustache;
-import com.github.mustachejava.MustacheFactory;
 import com.google.common.io.Files;
+import com.google.gson.GsonBuilder;
 
 import io.projectcastle.blogengine.EntriesWithFiles.FileEntry;
 
 /**
  * @author stw
  */
-public class BlogEngine {
+public class BlogEngine implements AutoCloseable {
 
     private final static String ALL_CATEGORY_NAME = "allCategories";
     private final static String ALL_ENTRY_NAME    = "allEntries";
     private final static String BLOG_EXTENSION    = ".blog";
 
+    /**
+     * Translates a configured thread count into an actual one
+     *
+     * @param configured
+     *            value from the configuration, 0 or less means all processors
+     * @return number of threads to use
+     */
+    private static int threadCount(final int configured) {
+        return (configured > 0) ? configured : Runtime.getRuntime().availableProcessors();
+    }
+
     /**
      * @param args
      * @throws NotesException
@@ -64,19 +92,38 @@ public class BlogEngine {
      */
     public static void main(final String[] args) throws IOException {
         final Date start = new Date();
+        // "serve" starts the preview server instead of a build
+        final boolean serve = (args.length > 0) && "serve".equals(args[0]);
+        // "packcomments" moves single comment files into one pack per entry
+        final boolean packComments = (args.length > 0) && "packcomments".equals(args[0]);
         // ALL Parameters are in the config object which reads/writes
         // configuration from JSON
         // If we have any command line arguments we save back the config
-        final BlogEngine blogEngine = new BlogEngine(Config.get(Config.CONFIG_NAME,(args.length > 0)));
-
-        System.out.println("\n\n *************** Loading Blog from disk ********************\n\n");
-        blogEngine.loadBlogFromDisk();
-        System.out.println("\n\n ***************** Rendering to disk ***********************\n\n");
-        blogEngine.renderBlog();
-        final Date end = new Date();
-        System.out.println("\n\n ************************** Done! **************************\n\n");
-        final Duration d = new Duration(start.getTime(), end.getTime());
-        System.out.println("Duration: " + String.valueOf(d.getStandardSeconds()) + " seconds");
+        final Config config = Config.get(Config.CONFIG_NAME, (args.length > 0) && !serve && !packComments);
+        config.migrateStateFiles();
+        if (serve) {
+            new PreviewServer(config).start();
+            return;
+        }
+        if (packComments) {
+            CommentStore.pack(new File(new File(config.sourceDirectory).getPath() + config.commentDirectory));
+            return;
+        }
+        try (final BlogEngine blogEngine = new BlogEngine(config)) {
+            System.out.println("\n\n *************** Loading Blog from disk ********************\n\n");
+            blogEngine.loadBlogFromDisk();
+            System.out.println("\n\n ***************** Rendering to disk ***********************\n\n");
+            blogEngine.renderBlog();
+            final Date end = new Date();
+            System.out.println("\n\n ************************** Done! **************************\n\n");
+            final Duration d = new Duration(start.getTime(), end.getTime());
+            System.out.println("Duration: " + String.valueOf(d.getStandardSeconds()) + " seconds");
+            if (config.buildMetrics) {
+                System.out.println();
+                blogEngine.getMetrics().printSummary();
+                blogEngine.getMetrics().save(config.getStateFile(config.buildMetricsFile));
+            }
+        }
 
     }
 
@@ -86,14 +133,46 @@ public class BlogEngine {
     private final TreeSet<BlogEntry>                         theBlog           = new TreeSet<BlogEntry>();
     private final Map<String, BlogEntry>                     blogById          = new HashMap<>();
     private final Config                                     config;
+    private final TemplateRegistry                           templates;
+    private final HtmlOutputMode                             htmlOutputMode;
     private EntriesWithFiles                                 fileEntries       = new EntriesWithFiles();
     private EntriesWithFiles                                 imgEntries        = new EntriesWithFiles();
     private final TreeMap<String, RenderInstructions>        overviewPages     = new TreeMap<String, RenderInstructions>();
     // for rendering and lookup of old/new URLs
     private final TreeMap<String, String> mapperOldNewURLs = new TreeMap<String, String>();
+    // What went into the pages, for incremental builds
+    private final List<File>             fileDefinitionSources = new ArrayList<>();
+    private final Map<BlogEntry, String> entryInputs           = new HashMap<>();
+    private final Map<String, String>    seriesInputs          = new HashMap<>();
+    private BuildManifest                manifest              = new BuildManifest();
+    private OutputDigestIndex            outputIndex           = null;
+    private String                       globalInput           = null;
+    private String                       navigationInput       = null;
+    private String                       allEntriesInput       = null;
+    // Where pages go, the build writes them to disk
+    private PageSink                     pageSink              = this::writePage;
+    // Parsed sources kept by the preview server between loads, can be null
+    private SourceCache<BlogEntry>       entryCache            = null;
+    private SourceCache<List<BlogComment>> commentCache      = null;
+    // Time, CPU and allocations per phase
+    private final BuildMetrics           metrics               = new BuildMetrics();
+    // Low memory build: entries keep their metadata only, HTML and comments
+    // get loaded for each page that shows them
+    private boolean                      lowMemory             = false;
+    // Pipelined build: Markdown gets converted while earlier pages render
+    private boolean                      pipelined             = false;
+    // Snapshot saved once the pipeline converted the Markdown, can be null
+    private File                         pendingSnapshot       = null;
+    private final Map<String, List<File>> commentSources       = new HashMap<>();
+    // Blocking reads and writes run on virtual threads
+    private final IoExecutor             io;
+    private final Queue<Future<Boolean>> pendingWrites         = new ConcurrentLinkedQueue<>();
 
     public BlogEngine(final Config config) {
         this.config = config;
+        this.templates = new TemplateRegistry(config.templateDirectory);
+        this.htmlOutputMode = HtmlOutputMode.fromConfig(config.htmlOutputMode);
+        this.io = new IoExecutor(config.ioConcurrency);
         // have 2 render instructions for the all.html and the
         // categories/index.html
         final RenderInstructions riAll = new RenderInstructions();
@@ -127,6 +206,21 @@ public class BlogEngine {
         return this.config;
     }
 
+    /**
+     * Stops the I/O threads, the engine can't load or render afterwards
+     */
+    @Override
+    public void close() {
+        this.io.close();
+    }
+
+    /**
+     * @return the measurements of this build
+     */
+    public BuildMetrics getMetrics() {
+        return this.metrics;
+    }
+
     /**
      * @return the theBlog
      */
@@ -150,42 +244,269 @@ public class BlogEngine {
             return null;
         }
 
+        // Parsed sources of the previous run, unless the preview server
+        // brought its own caches
+        File snapshotFile = null;
+        File markdownCacheFile = null;
+        // A snapshot holds every parsed entry, so it doesn't go with a low
+        // memory build. The preview server keeps everything anyway
+        this.lowMemory = this.config.lowMemoryBuild && (this.entryCache == null);
+        // The preview server renders through collectPages, without a pipeline
+        this.pipelined = this.config.pipelinedBuild && (this.entryCache == null);
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.SNAPSHOT)) {
+            if (this.config.modelSnapshot && !this.lowMemory && (this.entryCache == null)) {
+                snapshotFile = this.config.getStateFile(this.config.modelSnapshotFile);
+                this.useSourceCaches(new SourceCache<>(), new SourceCache<>());
+                if (ModelSnapshot.load(snapshotFile, this.entryCache, this.commentCache)) {
+                    System.out.println("Model snapshot loaded, parsing changed files only");
+                }
+            }
+            // The preview server keeps the cache of its first load. It would
+            // keep the HTML of the whole archive, so not in a low memory build
+            if (this.config.markdownCache && !this.lowMemory) {
+                markdownCacheFile = this.config.getStateFile(this.config.markdownCacheFile);
+                if (MarkdownConverter.getCache() == null) {
+                    MarkdownConverter.useCache(MarkdownCache.load(markdownCacheFile,
+                            this.config.markdownCacheEntries, this.config.markdownCacheMegabytes * 1024L * 1024L));
+                }
+            }
+        }
+        // Conversions happen while entries and comments load
+        this.metrics.nestedPhase(BuildMetrics.MARKDOWN);
+        MarkdownConverter.useMetrics(this.metrics);
+
         final String path = srcDir.getPath();
         this.loadBlogEntriesFromDisk(path + this.getConfig().documentDirectory);
         System.out.println("\n\nBlog loaded from disk");
         System.out.println("\n\nLoading comments...");
         this.loadCommentsFromDisk(path + this.getConfig().commentDirectory);
         System.out.println("\nComments loaded from disk");
-        this.loadFileDefinitionsFromDisk(path);
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.FILE_DEFINITIONS)) {
+            this.loadFileDefinitionsFromDisk(path);
+        }
         System.out.println("\n\nFile definitions loaded from disk");
+        MarkdownConverter.useMetrics(null);
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.SNAPSHOT)) {
+            if (snapshotFile != null) {
+                this.entryCache.prune();
+                this.commentCache.prune();
+                if (this.isMarkdownDeferred()) {
+                    // Saved by renderBlog once the pipeline converted the
+                    // Markdown, so the snapshot holds the HTML
+                    if (this.entryCache.isChanged() || this.commentCache.isChanged()
+                            || this.theBlog.stream().anyMatch(BlogEntry::isMarkdownPending)) {
+                        this.pendingSnapshot = snapshotFile;
+                    }
+                } else if (this.entryCache.isChanged() || this.commentCache.isChanged()) {
+                    ModelSnapshot.save(snapshotFile, this.entryCache, this.commentCache);
+                }
+            }
+            final MarkdownCache markdownCache = MarkdownConverter.getCache();
+            if ((markdownCacheFile != null) && (markdownCache != null)) {
+                System.out.println("Markdown: " + markdownCache.getStatistics());
+                if (markdownCache.isChanged()) {
+                    markdownCache.save(markdownCacheFile);
+                }
+            }
+        }
         return this.getTheBlog();
 
     }
 
-    private void loadCommentsFromDisk(String sourceFileOrDirName) {
-        final File srcDir = new File(sourceFileOrDirName);
+    /**
+     * Loads all comments and attaches them to their entries. Files are read
+     * on virtual threads, parsed on a worker pool and grouped by parent.
+     * Within a parent they
+     * keep the position of their file, so they attach in the same order as
+     * in a serial run
+     *
+     * @param sourceDirName
+     *            root of the comments
+     */
+    private void loadCommentsFromDisk(final String sourceDirName) {
+        final File srcDir = new File(sourceDirName);
         if (!srcDir.exists()) {
-            System.err.print(sourceFileOrDirName + " doesn't exist");
+            System.err.print(sourceDirName + " doesn't exist");
             return;
         }
+        final List<File> commentFiles = new ArrayList<>();
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.WALK)) {
+            this.retrieveCommentFilesFromDisk(srcDir, commentFiles);
+        }
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.COMMENTS)) {
+            if (this.lowMemory) {
+                this.indexCommentFiles(commentFiles);
+            } else {
+                this.loadCommentFiles(commentFiles);
+            }
+        }
+    }
 
-        if (srcDir.isDirectory()) {
-            // Recursive call to get files in directory structure
-            System.out.println("Comments from " + srcDir.getAbsolutePath());
-            for (final String curFile : srcDir.list()) {
-                this.loadCommentsFromDisk(srcDir.getPath() + "/" + curFile);
+    /**
+     * Low memory build: remembers which files hold the comments of an entry
+     * and how many there are, the comments themselves are dropped again
+     */
+    private void indexCommentFiles(final List<File> commentFiles) {
+        final Map<String, ConcurrentSkipListMap<Integer, File>> filesByParent = new ConcurrentHashMap<>();
+        final Map<String, Set<String>> idsByParent = new ConcurrentHashMap<>();
+        final ExecutorService pool = Executors.newFixedThreadPool(BlogEngine.threadCount(this.config.loadThreads));
+        final List<Future<?>> loaded = new ArrayList<>(commentFiles.size());
+        for (int i = 0; i < commentFiles.size(); i++) {
+            final int position = i;
+            final File commentFile = commentFiles.get(i);
+            loaded.add(this.io.submit(() -> {
+                final List<BlogComment> comments = this.loadCommentFile(commentFile, pool);
+                for (final BlogComment bc : comments) {
+                    if ((bc != null) && bc.isValid()) {
+                        if (bc.getParentId() == null) {
+                            System.err.println("Can't find parent:null");
+                            continue;
+                        }
+                        filesByParent.computeIfAbsent(bc.getParentId(), p -> new ConcurrentSkipListMap<>())
+                                .put(position, commentFile);
+                        idsByParent.computeIfAbsent(bc.getParentId(), p -> ConcurrentHashMap.newKeySet())
+                                .add(String.valueOf(bc.getUNID()));
+                    }
+                }
+                return null;
+            }));
+        }
+        // Parsing happens on the pool until the last file is read
+        try {
+            for (final Future<?> done : loaded) {
+                try {
+                    done.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    e.printStackTrace();
+                    return;
+                } catch (final ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        filesByParent.forEach((parent, byPosition) -> {
+            final BlogEntry be = this.blogById.get(parent);
+            if (be != null) {
+                be.setReleasedCommentCount(idsByParent.get(parent).size());
+                this.commentSources.put(parent, new ArrayList<>(byPosition.values()));
+            } else {
+                System.err.println("Can't find parent:" + parent);
+            }
+        });
+    }
+
+    /**
+     * Low memory build: loads HTML and comments of an entry again, until
+     * releaseContent drops them
+     *
+     * @param be
+     *            entry with released content
+     */
+    private void loadEntryContent(final BlogEntry be) {
+        if (be.getSourceFileName() == null) {
+            return;
+        }
+        final BlogEntry loaded = this.loadOneBlogEntry(new File(be.getSourceFileName()));
+        if (loaded != null) {
+            be.restoreContent(loaded);
+        }
+        final List<File> commentFiles = this.commentSources.get(be.getUNID());
+        if (commentFiles != null) {
+            for (final File commentFile : commentFiles) {
+                for (final BlogComment bc : CommentStore.load(commentFile)) {
+                    if ((bc != null) && bc.isValid() && be.getUNID().equals(bc.getParentId())) {
+                        be.addComment(bc);
+                    }
+                }
+            }
+        }
+        be.cleanupComments();
+    }
+
+    // Low memory build: HTML and comments for the entries of one page
+    private void loadEntryContent(final Collection<BlogEntry> entries) {
+        if (this.lowMemory) {
+            entries.forEach(this::loadEntryContent);
+        }
+    }
+
+    private void releaseEntryContent(final Collection<BlogEntry> entries) {
+        if (this.lowMemory) {
+            entries.forEach(BlogEntry::releaseContent);
+        }
+    }
+
+    private void loadCommentFiles(final List<File> commentFiles) {
+        final Map<String, ConcurrentSkipListMap<Integer, List<BlogComment>>> commentsByParent = new ConcurrentHashMap<>();
+        final ExecutorService pool = Executors.newFixedThreadPool(BlogEngine.threadCount(this.config.loadThreads));
+        final List<Future<?>> loaded = new ArrayList<>(commentFiles.size());
+        for (int i = 0; i < commentFiles.size(); i++) {
+            final int position = i;
+            final File commentFile = commentFiles.get(i);
+            loaded.add(this.io.submit(() -> {
+                final List<BlogComment> comments;
+                if (this.commentCache == null) {
+                    comments = this.loadCommentFile(commentFile, pool);
+                } else {
+                    comments = this.commentCache.get(commentFile, (f, content) -> this.parseCommentFile(f, content, pool));
+                    // Not part of a snapshot
+                    comments.forEach(bc -> bc.setSourceFileName(commentFile.getAbsolutePath()));
+                }
+                for (final BlogComment bc : comments) {
+                    if ((bc != null) && bc.isValid()) {
+                        if (bc.getParentId() == null) {
+                            System.err.println("Can't find parent:null");
+                            continue;
+                        }
+                        commentsByParent.computeIfAbsent(bc.getParentId(), p -> new ConcurrentSkipListMap<>())
+                                .computeIfAbsent(position, p -> new ArrayList<>()).add(bc);
+                    }
+                }
+                return null;
+            }));
+        }
+        // Parsing happens on the pool until the last file is read
+        try {
+            for (final Future<?> done : loaded) {
+                try {
+                    done.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    e.printStackTrace();
+                    return;
+                } catch (final ExecutionException e) {
+                    e.printStackTrace();
+                }
             }
+        } finally {
+            pool.shutdown();
+        }
 
-        } else if (srcDir.getName().endsWith(".comment") || srcDir.getName().endsWith(".json")) {
-            BlogComment bc = BlogComment.loadFromJson(srcDir);
-            if (bc != null && bc.isValid()) {
-                String parent = bc.getParentId();
-                if (this.blogById.containsKey(parent)) {
-                    this.blogById.get(parent).addComment(bc);
+        commentsByParent.forEach((parent, byPosition) -> {
+            final BlogEntry be = this.blogById.get(parent);
+            byPosition.values().forEach(comments -> comments.forEach(bc -> {
+                if (be != null) {
+                    be.addComment(bc);
                 } else {
                     System.err.println("Can't find parent:" + parent);
                 }
+            }));
+        });
+    }
+
+    private void retrieveCommentFilesFromDisk(final File srcDir, final List<File> commentFiles) {
+        if (srcDir.isDirectory()) {
+            // Recursive call to get files in directory structure
+            System.out.println("Comments from " + srcDir.getAbsolutePath());
+            for (final String curFile : srcDir.list()) {
+                this.retrieveCommentFilesFromDisk(new File(srcDir.getPath() + "/" + curFile), commentFiles);
             }
+        } else if (CommentStore.isCommentFile(srcDir)) {
+            commentFiles.add(srcDir);
         }
     }
 
@@ -314,28 +635,78 @@ public class BlogEngine {
         }
     }
 
+    /**
+     * Turns a URL into a nginx map key or value: adds the location prefix
+     * and percent-encodes everything outside the characters a URL path can
+     * carry as they are. Characters nginx treats as syntax, like ; $ { } and
+     * quotes, get encoded too. Without anything to change the string is
+     * returned as is
+     */
     private String cleanNginxMapperString(final String inString, final boolean isKey) {
-        final StringBuilder result = new StringBuilder();
+        final boolean prefix = !inString.startsWith(this.config.webBlogLocation);
+        int firstEncoded = 0;
+        while ((firstEncoded < inString.length()) && BlogEngine.isNginxSafe(inString.charAt(firstEncoded))) {
+            firstEncoded++;
+        }
+        if (!prefix && (firstEncoded == inString.length())) {
+            return inString;
+        }
 
-        if (!inString.startsWith(this.config.webBlogLocation)) {
+        final StringBuilder result = new StringBuilder(inString.length() + 32);
+        if (prefix) {
             if (isKey) {
                 result.append(this.config.plinkPrefix);
             } else {
                 result.append(this.config.webBlogLocation);
             }
         }
-        for (int i = 0; i < inString.length(); i++) {
+        result.append(inString, 0, firstEncoded);
+        for (int i = firstEncoded; i < inString.length(); i++) {
             final char x = inString.charAt(i);
-            if (x == ' ') {
-                result.append("%20");
-            } /* more here */else {
+            if (BlogEngine.isNginxSafe(x)) {
                 result.append(x);
+            } else {
+                final int codePoint = inString.codePointAt(i);
+                i += Character.charCount(codePoint) - 1;
+                BlogEngine.appendPercentEncoded(result, codePoint);
             }
         }
 
         return result.toString();
     }
 
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    // The UTF-8 bytes of one code point as %XX
+    private static void appendPercentEncoded(final StringBuilder result, final int codePoint) {
+        if (codePoint < 0x80) {
+            BlogEngine.appendPercentByte(result, codePoint);
+        } else if (codePoint < 0x800) {
+            BlogEngine.appendPercentByte(result, 0xc0 | (codePoint >> 6));
+            BlogEngine.appendPercentByte(result, 0x80 | (codePoint & 0x3f));
+        } else if (codePoint < 0x10000) {
+            BlogEngine.appendPercentByte(result, 0xe0 | (codePoint >> 12));
+            BlogEngine.appendPercentByte(result, 0x80 | ((codePoint >> 6) & 0x3f));
+            BlogEngine.appendPercentByte(result, 0x80 | (codePoint & 0x3f));
+        } else {
+            BlogEngine.appendPercentByte(result, 0xf0 | (codePoint >> 18));
+            BlogEngine.appendPercentByte(result, 0x80 | ((codePoint >> 12) & 0x3f));
+            BlogEngine.appendPercentByte(result, 0x80 | ((codePoint >> 6) & 0x3f));
+            BlogEngine.appendPercentByte(result, 0x80 | (codePoint & 0x3f));
+        }
+    }
+
+    private static void appendPercentByte(final StringBuilder result, final int b) {
+        result.append('%').append(BlogEngine.HEX[(b >> 4) & 0xf]).append(BlogEngine.HEX[b & 0xf]);
+    }
+
+    // Unreserved and path characters, % for already encoded ones and ? for
+    // legacy query strings
+    private static boolean isNginxSafe(final char c) {
+        return ((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9'))
+                || ("-._~!&()*+,=:@/%?".indexOf(c) > -1);
+    }
+
     private void retrieveBlogFilesFromDisk(final String sourceFileOrDirName, final Collection<File> blogFileList) {
         final File fileCandidate = new File(sourceFileOrDirName);
         if (!fileCandidate.exists()) {
@@ -369,28 +740,217 @@ public class BlogEngine {
             return;
         }
 
-        Collection<File> blogFileList = new ArrayList<>();
-        this.retrieveBlogFilesFromDisk(sourceDirName, blogFileList);
+        final List<File> blogFileList = new ArrayList<>();
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.WALK)) {
+            this.retrieveBlogFilesFromDisk(sourceDirName, blogFileList);
+        }
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.YAML)) {
+            this.loadBlogFiles(blogFileList);
+        }
+    }
+
+    private void loadBlogFiles(final List<File> blogFileList) {
 
+        // Files are read on virtual threads, YAML parsing and Markdown
+        // conversion run on a pool of platform threads. The results are
+        // merged in file order on this thread, so the model ends up exactly
+        // as in a serial run
+        final ExecutorService pool = Executors.newFixedThreadPool(BlogEngine.threadCount(this.config.loadThreads));
+        final List<Future<BlogEntry>> loadedEntries = new ArrayList<>(blogFileList.size());
         blogFileList.forEach(blogfile -> {
-            BlogEntry be = null;
-            try {
-                final FileInputStream in = new FileInputStream(blogfile);
-                be = BlogEntry.loadDataFromBlog(in);
-                in.close();
-            } catch (Exception e) {
-                e.printStackTrace();
+            loadedEntries.add(this.io.submit(() -> this.loadCachedBlogEntry(blogfile, pool)));
+        });
+
+        try {
+            for (final Future<BlogEntry> loaded : loadedEntries) {
+                BlogEntry be = null;
+                try {
+                    be = loaded.get();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    e.printStackTrace();
+                    return;
+                } catch (final ExecutionException e) {
+                    e.printStackTrace();
+                }
+                if ((be != null) && (be.getTitle() != null) && be.getStatus().equalsIgnoreCase("Published")) {
+                    this.addBlogContext(be);
+                }
             }
-            if ((be != null) && (be.getTitle() != null) && be.getStatus().equalsIgnoreCase("Published")) {
-                this.addBlogContext(be);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Reads one .blog file, or takes it from the cache of the preview server
+     *
+     * @param blogfile
+     *            the source file
+     * @param parsePool
+     *            platform threads for parsing
+     * @return the entry or null if it couldn't be loaded
+     */
+    private BlogEntry loadCachedBlogEntry(final File blogfile, final ExecutorService parsePool) {
+        if (this.entryCache == null) {
+            return this.loadOneBlogEntry(blogfile, parsePool);
+        }
+        final BlogEntry be;
+        try {
+            be = this.entryCache.get(blogfile, (f, source) -> this.parseOneBlogEntry(f, source, parsePool));
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (be != null) {
+            be.resetRenderState();
+            // Not part of a snapshot
+            be.setSourceFileName(blogfile.getAbsolutePath());
+            // A snapshot can hold Markdown a pipelined build didn't get to
+            if (!this.isMarkdownDeferred() && be.isMarkdownPending()) {
+                try {
+                    IoExecutor.onPool(parsePool, () -> {
+                        be.convertMarkdown();
+                        return be;
+                    });
+                } catch (final Exception e) {
+                    e.printStackTrace();
+                }
             }
-        });
+        }
+        return be;
+    }
+
+    /**
+     * Reads one .blog file, safe to call from any thread
+     *
+     * @param blogfile
+     *            the source file
+     * @return the entry or null if it couldn't be loaded
+     */
+    private BlogEntry loadOneBlogEntry(final File blogfile) {
+        return this.loadOneBlogEntry(blogfile, null);
+    }
+
+    /**
+     * Reads one .blog file on the calling thread and parses it on a pool.
+     * That's the load phase, so the parsing gets measured and a low memory
+     * build releases the content right away
+     *
+     * @param blogfile
+     *            the source file
+     * @param parsePool
+     *            platform threads for parsing, null parses on the calling
+     *            thread
+     * @return the entry or null if it couldn't be loaded
+     */
+    private BlogEntry loadOneBlogEntry(final File blogfile, final ExecutorService parsePool) {
+        try {
+            return this.parseOneBlogEntry(blogfile, java.nio.file.Files.readAllBytes(blogfile.toPath()), parsePool);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Parses the content of a .blog file, see loadOneBlogEntry
+     *
+     * @param blogfile
+     *            the source file
+     * @param source
+     *            its content
+     * @param parsePool
+     *            platform threads for parsing, null parses on the calling
+     *            thread
+     * @return the entry or null if it couldn't be parsed
+     */
+    private BlogEntry parseOneBlogEntry(final File blogfile, final byte[] source, final ExecutorService parsePool) {
+        BlogEntry be = null;
+        try {
+            if (parsePool == null) {
+                be = BlogEntry.loadDataFromBlog(new ByteArrayInputStream(source), !this.isMarkdownDeferred());
+            } else {
+                be = IoExecutor.onPool(parsePool, () -> {
+                    try (BuildMetrics.Item item = this.metrics.item(BuildMetrics.YAML, blogfile.getPath())) {
+                        final BlogEntry parsed = BlogEntry.loadDataFromBlog(new ByteArrayInputStream(source),
+                                !this.isMarkdownDeferred());
+                        if (this.lowMemory && (parsed != null)) {
+                            parsed.releaseContent();
+                        }
+                        return parsed;
+                    }
+                });
+            }
+            if (be != null) {
+                be.setSourceFileName(blogfile.getAbsolutePath());
+            }
+        } catch (final Exception e) {
+            e.printStackTrace();
+        }
+        return be;
+    }
+
+    /**
+     * A pipelined build converts Markdown in the pipeline, unless it is a low
+     * memory build: that one needs the description of every entry before it
+     * releases the HTML
+     */
+    private boolean isMarkdownDeferred() {
+        return this.pipelined && !this.lowMemory;
+    }
+
+    /**
+     * Reads a comment file or pack on the calling thread and parses it on a
+     * pool
+     *
+     * @param commentFile
+     *            the source file
+     * @param parsePool
+     *            platform threads for parsing
+     * @return the comments, empty if the file couldn't be read
+     */
+    private List<BlogComment> loadCommentFile(final File commentFile, final ExecutorService parsePool) {
+        try {
+            return this.parseCommentFile(commentFile, java.nio.file.Files.readAllBytes(commentFile.toPath()),
+                    parsePool);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * Parses the content of a comment file or pack on a pool
+     *
+     * @param commentFile
+     *            the source file
+     * @param content
+     *            its content
+     * @param parsePool
+     *            platform threads for parsing
+     * @return the comments, empty if the content couldn't be parsed
+     */
+    private List<BlogComment> parseCommentFile(final File commentFile, final byte[] content,
+            final ExecutorService parsePool) {
+        try {
+            final long lastModified = commentFile.lastModified();
+            return IoExecutor.onPool(parsePool, () -> {
+                try (BuildMetrics.Item item = this.metrics.item(BuildMetrics.COMMENTS, commentFile.getPath())) {
+                    return CommentStore.load(commentFile, content, lastModified);
+                }
+            });
+        } catch (final Exception e) {
+            e.printStackTrace();
+            return Collections.emptyList();
+        }
     }
 
     private EntriesWithFiles loadFileDefFromDisk(final String sourceFileName) {
 
         EntriesWithFiles result = null;
         final File source = new File(sourceFileName);
+        this.fileDefinitionSources.add(source);
 
         try {
             final FileInputStream in = new FileInputStream(source);
@@ -450,29 +1010,275 @@ public class BlogEngine {
     private void renderBlog() throws IOException {
         final String template = this.config.ENTRY_TEMPLATE;
         final BlogIndex seriesIndex = new BlogIndex();
-        final MustacheFactory mf = new DefaultMustacheFactory(new File(this.config.templateDirectory));
-        final Mustache mustache = mf.compile(template);
+        if (this.config.precompileTemplates && (this.templates.precompile() > 0)) {
+            System.err.println("Some templates failed to compile, see above");
+        }
+        final Mustache mustache = this.templates.get(template);
+        final File manifestFile = this.config.getStateFile(this.config.buildManifestFile);
+        this.manifest = this.config.incrementalBuild ? BuildManifest.load(manifestFile) : BuildManifest.fullBuild();
+        final File outputIndexFile = this.config.getStateFile(this.config.outputDigestFile);
+        this.outputIndex = OutputDigestIndex.load(outputIndexFile);
+        StreamingFileOutput.removeLeftovers(new File(this.config.destinationDirectory));
+
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.PREPARE)) {
+            this.prepareBlogEntriesWithPrevNextSeries(seriesIndex);
+            if (this.config.incrementalBuild) {
+                // A full build renders everything, no need to hash the sources
+                this.prepareBuildInputs();
+            }
+        }
 
-        this.prepareBlogEntriesWithPrevNextSeries(seriesIndex);
+        // Entry pages don't share mutable state, so they render in parallel
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.ENTRY_RENDER)) {
+            if (this.pipelined) {
+                this.renderEntriesPipelined(mustache);
+            } else {
+                this.renderEntries(mustache);
+            }
+        }
+        if (this.pendingSnapshot != null) {
+            try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.SNAPSHOT)) {
+                ModelSnapshot.save(this.pendingSnapshot, this.entryCache, this.commentCache);
+                this.pendingSnapshot = null;
+            }
+        }
+
+        System.out.println("\nEntries completed, now categories & dates\n");
 
+        // Categories & Date Categories !!
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.OVERVIEW_RENDER)) {
+            this.renderOverViewPages(BlogEngine.threadCount(this.config.renderThreads));
+        }
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.ATTACHMENTS)) {
+            this.renderAttachments();
+        }
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.INDEX)) {
+            this.renderIndex();
+        }
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.RSS)) {
+            this.renderIndexRSS();
+            this.renderTopicFeeds();
+        }
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.NOT_FOUND)) {
+            this.render404();
+        }
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.SERIES)) {
+            this.renderSeries(seriesIndex);
+        }
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.IMPRINT)) {
+            this.renderImprint();
+        }
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.MAPPERS)) {
+            this.renderURLMappers();
+        }
+        try (BuildMetrics.Phase phase = this.metrics.phase(BuildMetrics.WRITES)) {
+            this.awaitWrites();
+        }
+        this.manifest.save(manifestFile);
+        this.outputIndex.save(outputIndexFile);
+
+        System.out.println("...Done...");
+    }
+
+    private void renderEntries(final Mustache mustache) throws IOException {
+        final ExecutorService pool = Executors.newFixedThreadPool(BlogEngine.threadCount(this.config.renderThreads));
+        final List<Future<?>> renderedEntries = new ArrayList<>(this.theBlog.size());
         this.theBlog.forEach(renderEntry -> {
-            this.renderOneEntry(renderEntry, mustache);
+            renderedEntries.add(pool.submit(() -> this.renderOneEntry(renderEntry, mustache)));
         });
+        pool.shutdown();
+        for (final Future<?> rendered : renderedEntries) {
+            try {
+                rendered.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (final ExecutionException e) {
+                e.printStackTrace();
+            }
+        }
+    }
 
-        System.out.println("\nEntries completed, now categories & dates\n");
+    /**
+     * Renders the entry pages through an EntryPipeline: the load threads
+     * convert the Markdown of the next entries while the render threads turn
+     * earlier ones into pages and the I/O executor writes them. Navigation
+     * needs every entry, so the pipeline starts once all are parsed. A low
+     * memory build loads HTML and comments in the convert stage
+     *
+     * @param mustache
+     *            the entry template
+     * @throws IOException
+     */
+    private void renderEntriesPipelined(final Mustache mustache) throws IOException {
+        final EntryPipeline pipeline = new EntryPipeline(BlogEngine.threadCount(this.config.loadThreads),
+                BlogEngine.threadCount(this.config.renderThreads));
+        MarkdownConverter.useMetrics(this.metrics);
+        try {
+            pipeline.run(this.theBlog, be -> {
+                if (this.lowMemory) {
+                    this.loadEntryContent(be);
+                } else {
+                    be.convertMarkdown();
+                }
+            }, be -> this.renderOneEntry(be, mustache));
+        } finally {
+            MarkdownConverter.useMetrics(null);
+        }
+    }
 
-        // Categories & Date Categories !!
-        this.renderOverViewPages();
+    /**
+     * Prepares the loaded blog like renderBlog, but hands the pages to a sink
+     * instead of rendering them. RSS and URL maps are left out
+     *
+     * @param sink
+     *            receives the pages
+     * @param currentManifest
+     *            tracks the file hashes, so unchanged files aren't read again
+     * @throws IOException
+     */
+    void collectPages(final PageSink sink, final BuildManifest currentManifest) throws IOException {
+        this.pageSink = sink;
+        this.manifest = currentManifest;
+        final BlogIndex seriesIndex = new BlogIndex();
+        final Mustache mustache = this.templates.get(this.config.ENTRY_TEMPLATE);
+        this.prepareBlogEntriesWithPrevNextSeries(seriesIndex);
+        this.prepareBuildInputs();
+        this.theBlog.forEach(be -> this.renderOneEntry(be, mustache));
+        this.renderOverViewPages(1);
         this.renderAttachments();
         this.renderIndex();
-        this.renderIndexRSS();
         this.render404();
         this.renderSeries(seriesIndex);
         this.renderImprint();
-        this.renderURLMapper();
-        this.renderNGinxURLMapper();
+    }
 
-        System.out.println("...Done...");
+    /**
+     * Keeps parsed entries and comments between loads
+     *
+     * @param entries
+     *            cache for .blog files
+     * @param comments
+     *            cache for comment files and packs
+     */
+    void useSourceCaches(final SourceCache<BlogEntry> entries, final SourceCache<List<BlogComment>> comments) {
+        this.entryCache = entries;
+        this.commentCache = comments;
+    }
+
+    /**
+     * Collects the inputs shared by many pages: configuration, templates, the
+     * navigation lists and the source files of every entry
+     */
+    private void prepareBuildInputs() {
+        final List<String> global = new ArrayList<>();
+        global.add(new GsonBuilder().create().toJson(this.config));
+        this.collectFileInputs(new File(this.config.templateDirectory), global);
+        this.globalInput = DigestUtils.sha256Hex(String.join("\n", global));
+
+        final StringBuilder navigation = new StringBuilder();
+        this.allCategories.values().forEach(li -> navigation.append(this.linkInput(li)).append(li.count));
+        this.allDateCategories.values().forEach(li -> navigation.append(this.linkInput(li)).append(li.count));
+        this.navigationInput = DigestUtils.sha256Hex(navigation.toString());
+
+        // Every member of a series lists all others, one digest per series
+        this.allSeries.forEach((series, members) -> {
+            final StringBuilder links = new StringBuilder();
+            members.values().forEach(li -> links.append(this.linkInput(li)));
+            this.seriesInputs.put(series, DigestUtils.sha256Hex(links.toString()));
+        });
+
+        final StringBuilder allEntries = new StringBuilder();
+        for (final BlogEntry be : this.theBlog) {
+            final TreeSet<String> sources = new TreeSet<>();
+            if (be.getSourceFileName() != null) {
+                sources.add(this.manifest.fileToken(new File(be.getSourceFileName())));
+            }
+            be.getComments().forEach(comment -> {
+                if (comment.getSourceFileName() != null) {
+                    sources.add(this.manifest.fileToken(new File(comment.getSourceFileName())));
+                }
+            });
+            this.commentSources.getOrDefault(be.getUNID(), Collections.emptyList())
+                    .forEach(commentFile -> sources.add(this.manifest.fileToken(commentFile)));
+            final String entryInput = String.join(";", sources);
+            this.entryInputs.put(be, entryInput);
+            allEntries.append(entryInput).append("\n");
+        }
+        this.fileDefinitionSources.forEach(source -> allEntries.append(this.manifest.fileToken(source)));
+        this.allEntriesInput = DigestUtils.sha256Hex(allEntries.toString());
+    }
+
+    private void collectFileInputs(final File fileOrDirectory, final Collection<String> inputs) {
+        if (fileOrDirectory.isDirectory()) {
+            final String[] names = fileOrDirectory.list();
+            Arrays.sort(names);
+            for (final String curFile : names) {
+                this.collectFileInputs(new File(fileOrDirectory, curFile), inputs);
+            }
+        } else if (fileOrDirectory.exists()) {
+            inputs.add(this.manifest.fileToken(fileOrDirectory));
+        }
+    }
+
+    private String linkInput(final LinkItem li) {
+        return (li == null) ? "-" : li.name + "|" + li.place + "|";
+    }
+
+    /**
+     * Collects what determines the content of a page
+     *
+     * @param templateName
+     *            template used for the page
+     * @param payload
+     *            object to render
+     * @return the inputs of the page
+     */
+    private List<String> pageInputs(final String templateName, final Object payload) {
+        if (this.globalInput == null) {
+            // A full build, prepareBuildInputs didn't run
+            return Collections.emptyList();
+        }
+        final List<String> inputs = new ArrayList<>();
+        inputs.add(this.globalInput);
+        inputs.add(this.navigationInput);
+        inputs.add(templateName);
+        if (payload instanceof BlogEntry) {
+            final BlogEntry be = (BlogEntry) payload;
+            inputs.add(this.entryInputs.get(be));
+            inputs.add(this.linkInput(be.getPreviousItem()));
+            inputs.add(this.linkInput(be.getNextItem()));
+            this.addSeriesInputs(be, inputs);
+        } else if (payload instanceof BlogIndex) {
+            this.addIndexInputs((BlogIndex) payload, inputs);
+        } else {
+            // Attachments and anything else that comes from the file definitions
+            inputs.add(this.allEntriesInput);
+        }
+        return inputs;
+    }
+
+    private void addIndexInputs(final BlogIndex bi, final List<String> inputs) {
+        inputs.add(bi.pageTitle);
+        inputs.add(bi.pageLink);
+        inputs.add(this.linkInput(bi.previousItem));
+        inputs.add(this.linkInput(bi.nextItem));
+        if (bi.topArticles != null) {
+            bi.topArticles.forEach(be -> {
+                inputs.add(this.entryInputs.get(be));
+                // series.html lists the other members of each series
+                this.addSeriesInputs(be, inputs);
+            });
+        }
+        if (bi.categorizedEntries != null) {
+            bi.categorizedEntries.forEach(subBi -> this.addIndexInputs(subBi, inputs));
+        }
+    }
+
+    private void addSeriesInputs(final BlogEntry be, final List<String> inputs) {
+        if (be.getSeriesMember() != null) {
+            inputs.add(this.seriesInputs.get(be.getSeries()));
+        }
     }
 
     private void prepareBlogEntriesWithPrevNextSeries(BlogIndex seriesIndex) {
@@ -535,7 +1341,9 @@ public class BlogEngine {
             i++;
         }
 
+        this.loadEntryContent(bi.topArticles);
         this.renderToDisk(template, finalDestination, bi);
+        this.releaseEntryContent(bi.topArticles);
         System.out.println("Rendered Imprint");
 
     }
@@ -560,7 +1368,9 @@ public class BlogEngine {
                 i++;
             }
         }
+        this.loadEntryContent(bi.topArticles);
         this.renderToDisk(template, finalDestination, bi);
+        this.releaseEntryContent(bi.topArticles);
 
         System.out.println("Rendered Index");
     }
@@ -568,7 +1378,6 @@ public class BlogEngine {
     private void renderIndexRSS() {
         final String finalDestination = this.config.destinationDirectory + this.config.indexRSSName;
         final String finalDestination2 = this.config.destinationDirectory + this.config.indexRSSName2;
-        final BlogOutput out = new BlogOutput(finalDestination);
         final BlogIndex bi = new BlogIndex();
         bi.allCategories = this.allCategories.values();
         bi.allDateCategories = this.allDateCategories.values();
@@ -583,113 +1392,214 @@ public class BlogEngine {
                 i++;
         }
 
-        final RSSFeedWriter rss = new RSSFeedWriter(this.getConfig(), bi);
-        try {
-            rss.write(out);
-            out.flush();
-            out.close();
-            Files.copy(new File(finalDestination), new File(finalDestination2));
-            System.out.println("\nRSS updated");
-
-        } catch (final Exception e) {
-            System.out.println("\nstories.rss rendering failed: " + e.getMessage());
+        final boolean rendered = this.renderFeed(finalDestination, bi, this.config.rssTitle, this.config.rssLink);
+        if (rendered || !new File(finalDestination2).exists()) {
+            try {
+                BlogEngine.linkOrCopy(new File(finalDestination), new File(finalDestination2));
+                System.out.println("\nRSS updated");
+            } catch (final IOException e) {
+                System.out.println("\nstories.rss rendering failed: " + e.getMessage());
+            }
         }
-
     }
 
     /**
-     * Creates the map for blog redirections
+     * Writes a feed for each category next to the category page and one for
+     * each series, in parallel. They carry the newest published entries
      *
-     * @param destination
-     * @throws FileNotFoundException
+     * @throws IOException
      */
-    private void renderNGinxURLMapper() throws FileNotFoundException {
-        final File outFile = new File(this.config.destinationDirectory + this.config.urlmapNGinx);
-        if (outFile.exists()) {
-            outFile.delete();
+    private void renderTopicFeeds() throws IOException {
+        // Topic feeds live in the same tree as the main feed
+        final String rssLink = this.config.rssLink;
+        final String blogUrl = rssLink.substring(0, rssLink.lastIndexOf('/') + 1);
+        final List<Runnable> feeds = new ArrayList<>();
+        if (this.config.categoryFeeds) {
+            for (final RenderInstructions ri : this.overviewPages.values()) {
+                if ("category".equals(ri.type) && (ri.members != null)) {
+                    final String location = this.config.categoriesLocation + ri.key + ".xml";
+                    final BlogIndex bi = this.newestPublished(ri.members);
+                    feeds.add(() -> this.renderFeed(this.config.destinationDirectory + location, bi,
+                            this.config.rssTitle + " - " + ri.pageTitle, blogUrl + location));
+                }
+            }
         }
-
-        final ArrayList<String> keysWritten = new ArrayList<String>();
-
-        final PrintWriter pw = new PrintWriter(outFile);
-
-        for (final Map.Entry<String, String> e : this.mapperOldNewURLs.entrySet()) {
-            final String key = e.getKey().toLowerCase();
-            final String value = e.getValue();
-
-            final String realKey = this.cleanNginxMapperString(key, true);
-            final String realValue = this.cleanNginxMapperString(value, false);
-
-            if (!keysWritten.contains(realKey)) {
-                pw.write(realKey);
-                pw.write(" ");
-                pw.write(realValue);
-                pw.write(";\n");
-                keysWritten.add(realKey);
+        if (this.config.seriesFeeds) {
+            final Map<String, TreeSet<BlogEntry>> seriesEntries = new TreeMap<>();
+            for (final BlogEntry be : this.theBlog) {
+                if (be.getSeries() != null) {
+                    seriesEntries.computeIfAbsent(be.getSeries(), s -> new TreeSet<>()).add(be);
+                }
             }
+            seriesEntries.forEach((series, entries) -> {
+                final String slug = new LinkItem(series).place;
+                if (slug.isEmpty()) {
+                    System.err.println("No feed for series " + series + ", its name has no letters or digits");
+                    return;
+                }
+                final String location = this.config.seriesFeedLocation + slug + ".xml";
+                final BlogIndex bi = this.newestPublished(entries);
+                feeds.add(() -> this.renderFeed(this.config.destinationDirectory + location, bi,
+                        this.config.rssTitle + " - " + series, blogUrl + location));
+            });
+        }
+        if (feeds.isEmpty()) {
+            return;
+        }
 
+        // Feeds share entries, low memory builds load and release them one
+        // feed at a time
+        final ExecutorService pool = Executors
+                .newFixedThreadPool(this.lowMemory ? 1 : BlogEngine.threadCount(this.config.renderThreads));
+        final List<Future<?>> rendered = new ArrayList<>(feeds.size());
+        feeds.forEach(feed -> rendered.add(pool.submit(feed)));
+        pool.shutdown();
+        for (final Future<?> done : rendered) {
+            try {
+                done.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (final ExecutionException e) {
+                e.printStackTrace();
+            }
         }
-        pw.flush();
-        pw.close();
-        System.out.println("URL mapping written to file " + outFile.getPath());
+        System.out.println("\nRendered " + feeds.size() + " category and series feeds");
+    }
 
+    private BlogIndex newestPublished(final TreeSet<BlogEntry> entries) {
+        final BlogIndex bi = new BlogIndex();
+        bi.topArticles = new BlogEntryCollection(true);
+        final Iterator<BlogEntry> it = entries.descendingIterator();
+        while (it.hasNext() && (bi.topArticles.size() < this.config.entriesInRSS)) {
+            final BlogEntry cur = it.next();
+            if ("Published".equals(cur.getStatus())) {
+                bi.topArticles.add(cur);
+            }
+        }
+        return bi;
     }
 
-    private void renderOneEntry(final BlogEntry be, final Mustache mustache) {
+    /**
+     * Writes one feed unless its entries and the configuration didn't
+     * change since the last run
+     *
+     * @return true if the feed was written
+     */
+    private boolean renderFeed(final String destination, final BlogIndex bi, final String title,
+            final String link) {
+        final List<String> inputs = new ArrayList<>();
+        inputs.add(this.globalInput);
+        this.addIndexInputs(bi, inputs);
+        if (!this.manifest.isRenderRequired(destination, inputs) && this.config.incrementalBuild) {
+            this.outputIndex.keep(new File(destination));
+            return false;
+        }
 
-        //TODO: remove dependency on this.allCategories and this.allSeries and this.allDateCategories
-        
-        final String location = this.config.destinationDirectory + be.getEntryUrl();
+        final RSSFeedWriter rss = new RSSFeedWriter(this.getConfig(), bi, title, link);
+        this.loadEntryContent(bi.topArticles);
+        try {
+            new File(destination).getAbsoluteFile().getParentFile().mkdirs();
+            final BlogOutput out = new BlogOutput(destination, HtmlOutputMode.PASSTHROUGH,
+                    this.config.streamingOutput, this.outputIndex);
+            rss.write(out);
+            out.flush();
+            out.close();
+            this.manifest.pageWritten(destination, inputs);
+            return true;
+        } catch (final Exception e) {
+            System.out.println("\n" + destination + " rendering failed: " + e.getMessage());
+            return false;
+        } finally {
+            this.releaseEntryContent(bi.topArticles);
+        }
+    }
 
-        // Set the current context
-        for (final String catName : be.getCategory()) {
-            final LinkItem cat = new LinkItem(catName);
-            final String c = cat.place;
-            this.allCategories.get(c).active = true;
+    /**
+     * Makes target a hard link to source, so the same bytes don't get
+     * written twice. Copies where the file system has no hard links
+     */
+    private static void linkOrCopy(final File source, final File target) throws IOException {
+        final Path sourcePath = source.toPath();
+        final Path targetPath = target.toPath();
+        if (java.nio.file.Files.exists(targetPath) && java.nio.file.Files.isSameFile(sourcePath, targetPath)) {
+            return;
         }
-        this.allDateCategories.get(be.getDateYear()).active = true;
+        final Path temp = targetPath.resolveSibling("." + target.getName() + ".link");
+        try {
+            java.nio.file.Files.deleteIfExists(temp);
+            java.nio.file.Files.createLink(temp, sourcePath);
+            java.nio.file.Files.move(temp, targetPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException | UnsupportedOperationException e) {
+            java.nio.file.Files.deleteIfExists(temp);
+            Files.copy(source, target);
+        }
+    }
 
-        if (be.getSeries() != null) {
-            final String series = be.getSeries();
-            if (this.allSeries.containsKey(series)) {
-                this.allSeries.get(series).get(be.getEntryUrl()).active = true;
+    private void renderOneEntry(final BlogEntry be, final Mustache mustache) {
+        try (BuildMetrics.Item item = this.metrics.item(BuildMetrics.ENTRY_RENDER, be.getEntryUrl())) {
+            // The pipeline loaded it already
+            if (this.lowMemory && be.isContentReleased()) {
+                this.loadEntryContent(be);
+            }
+            try {
+                this.renderOneEntryPage(be, mustache);
+            } finally {
+                if (this.lowMemory) {
+                    be.releaseContent();
+                }
             }
         }
+    }
 
-        // Prepare to write out
-        this.renderToDisk(mustache, location, be);
+    private void renderOneEntryPage(final BlogEntry be, final Mustache mustache) {
 
-        // Cleanup
+        final String location = this.config.destinationDirectory + be.getEntryUrl();
+
+        // The current context is only marked in the navigation of this page
+        final Set<LinkItem> activeCategories = new HashSet<>();
         for (final String catName : be.getCategory()) {
             final LinkItem cat = new LinkItem(catName);
-            final String c = cat.place;
-            this.allCategories.get(c).active = false;
+            activeCategories.add(this.allCategories.get(cat.place));
         }
-        this.allDateCategories.get(be.getDateYear()).active = false;
-
+        final Set<LinkItem> activeYear = new HashSet<>();
+        activeYear.add(this.allDateCategories.get(be.getDateYear()));
+        final Set<LinkItem> activeSeries = new HashSet<>();
         if (be.getSeries() != null) {
             final String series = be.getSeries();
             if (this.allSeries.containsKey(series)) {
-                this.allSeries.get(series).get(be.getEntryUrl()).active = false;
+                activeSeries.add(this.allSeries.get(series).get(be.getEntryUrl()));
             }
         }
+
+        final PageNavigation navigation = new PageNavigation();
+        navigation.allCategories = PageNavigation.markActive(be.getAllCategories(), activeCategories);
+        navigation.allDateCategories = PageNavigation.markActive(be.getAllDateCategories(), activeYear);
+        navigation.seriesMember = PageNavigation.markActive(be.getSeriesMember(), activeSeries);
+
+        // Prepare to write out
+        this.renderToDisk(mustache, location, be, navigation);
     }
 
     private void renderOverViewPage(final RenderInstructions ri) {
-        final String template = ri.getFinalTemplateName(this.config.templateDirectory, ri.key);
+        final String template = ri.getFinalTemplateName(this.templates, ri.key);
         final String finalDestination = this.config.destinationDirectory + ri.outFileName;
         boolean goodToGo = false;
-        // Set of categories
+        // Set of categories, only marked in the navigation of this page
+        final Set<LinkItem> active = new HashSet<>();
         if (this.allCategories.containsKey(ri.key)) {
-            this.allCategories.get(ri.key).active = true;
+            active.add(this.allCategories.get(ri.key));
         }
         if (this.allDateCategories.containsKey(ri.key)) {
-            this.allDateCategories.get(ri.key).active = true;
+            active.add(this.allDateCategories.get(ri.key));
         }
+        final Collection<LinkItem> pageCategories = PageNavigation.markActive(this.allCategories.values(), active);
+        final Collection<LinkItem> pageDateCategories = PageNavigation.markActive(this.allDateCategories.values(),
+                active);
 
         final BlogIndex bi = new BlogIndex();
-        bi.allCategories = this.allCategories.values();
-        bi.allDateCategories = this.allDateCategories.values();
+        bi.allCategories = pageCategories;
+        bi.allDateCategories = pageDateCategories;
         bi.pageTitle = ri.pageTitle;
         bi.pageLink = ri.pageLink;
         bi.nextItem = ri.nextItem;
@@ -702,14 +1612,16 @@ public class BlogEngine {
             bi.topArticles = new BlogEntryCollection(!ri.reverse);
             // Little confusion on sorting order
             final Iterator<BlogEntry> it = ri.members.iterator();
-            // We need to copy from the render instruction to get the
-            // sequence reversed
+            // We need to copy from the render instruction, the collection
+            // reverses the sorted sequence in one go
+            final List<BlogEntry> published = new ArrayList<>(ri.members.size());
             while (it.hasNext()) {
                 final BlogEntry cur = it.next();
                 if (cur.getStatus().equals("Published")) {
-                    bi.topArticles.add(cur);
+                    published.add(cur);
                 }
             }
+            bi.topArticles.addAll(published);
             goodToGo = true;
         } else if (ri.categories != null) {
             bi.categorizedEntries = new ArrayList<BlogIndex>();
@@ -720,8 +1632,8 @@ public class BlogEngine {
             while (it.hasNext()) {
                 final RenderInstructions curRi = ri.categories.get(it.next());
                 final BlogIndex subBi = new BlogIndex();
-                subBi.allCategories = this.allCategories.values();
-                subBi.allDateCategories = this.allDateCategories.values();
+                subBi.allCategories = pageCategories;
+                subBi.allDateCategories = pageDateCategories;
                 subBi.pageTitle = curRi.pageTitle;
                 subBi.pageLink = curRi.pageLink;
                 subBi.topArticles = new BlogEntryCollection(true);
@@ -741,41 +1653,58 @@ public class BlogEngine {
             this.renderToDisk(template, finalDestination, bi);
         }
 
-        // Reset of categories
-        if (this.allCategories.containsKey(ri.key)) {
-            this.allCategories.get(ri.key).active = false;
-        }
-        if (this.allDateCategories.containsKey(ri.key)) {
-            this.allDateCategories.get(ri.key).active = false;
-        }
-
     }
 
     /**
-     * Renders all overview pages: year, month, categories
+     * Renders all overview pages: year, month, categories. The previous and
+     * next links get chained first, after that every page renders on its
+     * own. With more than one thread the pages go to a work stealing pool,
+     * the ones listing the most entries first, so all.html and the category
+     * index don't end up as the tail of the phase
+     *
+     * @param threads
+     *            number of render threads, 1 renders on the calling thread
+     * @throws IOException
      */
-    private void renderOverViewPages() {
+    private void renderOverViewPages(final int threads) throws IOException {
 
         // Special challenge: every overview page needs
         // to have a previous and a next entry
         final String baseDir = this.config.webBlogLocation;
-        RenderInstructions currentRI = null;
-        LinkItem nextEntry = null;
-        LinkItem previousEntry = null;
+        final List<RenderInstructions> pages = new ArrayList<>(this.overviewPages.values());
+        for (int i = 1; i < pages.size(); i++) {
+            final RenderInstructions previous = pages.get(i - 1);
+            final RenderInstructions current = pages.get(i);
+            previous.nextItem = new LinkItem(current.pageTitle, baseDir + current.outFileName, null);
+            current.previousItem = new LinkItem(previous.pageTitle, baseDir + previous.outFileName, null);
+        }
 
-        for (final RenderInstructions ri : this.overviewPages.values()) {
-            // We render one offset in the loop to be able to fetch the entry
-            nextEntry = new LinkItem(ri.pageTitle, baseDir + ri.outFileName, null);
-            if (currentRI != null) {
-                previousEntry = new LinkItem(currentRI.pageTitle, baseDir + currentRI.outFileName, null);
-                currentRI.nextItem = nextEntry;
-                ri.previousItem = previousEntry;
-                this.renderOverViewPage(currentRI);
+        if (threads < 2) {
+            pages.forEach(this::renderMeasuredOverViewPage);
+            return;
+        }
+
+        pages.sort(Comparator.comparingInt(RenderInstructions::getEntryCount).reversed());
+        final ExecutorService pool = Executors.newWorkStealingPool(threads);
+        final List<Future<?>> rendered = new ArrayList<>(pages.size());
+        pages.forEach(ri -> rendered.add(pool.submit(() -> this.renderMeasuredOverViewPage(ri))));
+        pool.shutdown();
+        for (final Future<?> done : rendered) {
+            try {
+                done.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (final ExecutionException e) {
+                e.printStackTrace();
             }
-            currentRI = ri;
         }
-        // The last entry wasn't rendered inside the loop
-        this.renderOverViewPage(currentRI);
+    }
+
+    private void renderMeasuredOverViewPage(final RenderInstructions ri) {
+        try (BuildMetrics.Item item = this.metrics.item(BuildMetrics.OVERVIEW_RENDER, ri.outFileName)) {
+            this.renderOverViewPage(ri);
+        }
     }
 
     private void renderSeries(final BlogIndex bi) throws IOException {
@@ -802,49 +1731,144 @@ public class BlogEngine {
      *            object to render
      */
     private void renderToDisk(final String template, final String finalDestination, final Object payload) {
-        final MustacheFactory mf = new DefaultMustacheFactory(new File(this.config.templateDirectory));
-        final Mustache mustache = mf.compile(template);
+        final Mustache mustache = this.templates.get(template);
         this.renderToDisk(mustache, finalDestination, payload);
     }
 
-    private void renderToDisk(final Mustache mustache, final String finalDestination, final Object payload) {
-        final BlogOutput out = new BlogOutput(finalDestination, true);
+    /**
+     * Renders with one or more scopes, later scopes take precedence. The
+     * first scope is the object the page is about
+     */
+    private void renderToDisk(final Mustache mustache, final String finalDestination, final Object... scopes) {
+        this.pageSink.page(finalDestination, this.pageInputs(mustache.getName(), scopes[0]), mustache, scopes);
+    }
+
+    /**
+     * The PageSink of the build: checks with the build manifest if the inputs
+     * of the page changed since the last run and writes it to disk
+     */
+    private void writePage(final String finalDestination, final List<String> inputs, final Mustache mustache,
+            final Object... scopes) {
+        final boolean changed = this.manifest.isRenderRequired(finalDestination, inputs);
+        if (!changed && this.config.incrementalBuild) {
+            this.outputIndex.keep(new File(finalDestination));
+            return;
+        }
+        final BlogOutput out = new BlogOutput(finalDestination, this.htmlOutputMode, this.config.streamingOutput,
+                this.outputIndex);
         final Writer pw = new PrintWriter(out);
-        mustache.execute(pw, payload);
+        try {
+            mustache.execute(pw, scopes);
+        } catch (final RuntimeException e) {
+            // Don't leave a half rendered page behind
+            out.discard();
+            throw e;
+        }
         try {
             pw.flush();
-            pw.close();
-            out.close();
+            this.pendingWrites.add(out.closeOn(this.io, () -> this.manifest.pageWritten(finalDestination, inputs)));
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
     /**
-     * Creates the map for blog redirections
+     * Waits until the I/O executor wrote all pages handed to it
      *
-     * @param destination
-     * @throws FileNotFoundException
+     * @throws IOException
      */
-    private void renderURLMapper() throws FileNotFoundException {
-        final File outFile = new File(this.config.destinationDirectory + this.config.urlmapFile);
-        if (outFile.exists()) {
-            outFile.delete();
+    private void awaitWrites() throws IOException {
+        Future<Boolean> write;
+        while ((write = this.pendingWrites.poll()) != null) {
+            try {
+                write.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            } catch (final ExecutionException e) {
+                e.printStackTrace();
+            }
         }
+    }
 
-        final PrintWriter pw = new PrintWriter(outFile);
-        pw.write("# Mapping of legacy blog URL into the new format\n");
+    /**
+     * Creates the maps for blog redirections, the plain one and the one for
+     * nginx, in one pass over the old and new URLs. Cleaning can turn
+     * different old URLs into the same nginx key, only the first one is
+     * written
+     */
+    private void renderURLMappers() {
+        final File mapFile = new File(this.config.destinationDirectory + this.config.urlmapFile);
+        final File nginxFile = new File(this.config.destinationDirectory + this.config.urlmapNGinx);
+        final List<String> inputs = this.mapperInputs();
+        final boolean writeMap = this.isMapperRenderRequired(mapFile, inputs);
+        final boolean writeNginx = this.isMapperRenderRequired(nginxFile, inputs);
+        if (!writeMap && !writeNginx) {
+            return;
+        }
 
-        for (final Map.Entry<String, String> e : this.mapperOldNewURLs.entrySet()) {
-            pw.write(e.getKey().toLowerCase());
-            pw.write(" ");
-            pw.write(e.getValue());
-            pw.write("\n");
+        final Set<String> keysWritten = new HashSet<>();
+        try (Writer map = writeMap ? BlogEngine.mapperWriter(mapFile) : null;
+                Writer nginx = writeNginx ? BlogEngine.mapperWriter(nginxFile) : null) {
+            if (map != null) {
+                map.write("# Mapping of legacy blog URL into the new format\n");
+            }
+            for (final Map.Entry<String, String> e : this.mapperOldNewURLs.entrySet()) {
+                final String key = e.getKey().toLowerCase();
+                final String value = e.getValue();
+                if (map != null) {
+                    map.write(key);
+                    map.write(' ');
+                    map.write(value);
+                    map.write('\n');
+                }
+                if (nginx != null) {
+                    final String realKey = this.cleanNginxMapperString(key, true);
+                    if (keysWritten.add(realKey)) {
+                        nginx.write(realKey);
+                        nginx.write(' ');
+                        nginx.write(this.cleanNginxMapperString(value, false));
+                        nginx.write(";\n");
+                    }
+                }
+            }
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (writeMap) {
+            this.manifest.pageWritten(mapFile.getPath(), inputs);
+            System.out.println("URL mapping written to file " + mapFile.getPath());
+        }
+        if (writeNginx) {
+            this.manifest.pageWritten(nginxFile.getPath(), inputs);
+            System.out.println("URL mapping written to file " + nginxFile.getPath());
+            if (this.config.nginxMapHints) {
+                final File hintsFile = new File(this.config.destinationDirectory + this.config.urlmapNGinxHints);
+                try (Writer hints = BlogEngine.mapperWriter(hintsFile)) {
+                    hints.write(NginxMapHints.describe(keysWritten));
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                }
+            }
         }
-        pw.flush();
-        pw.close();
-        System.out.println("URL mapping written to file " + outFile.getPath());
+    }
+
+    private static Writer mapperWriter(final File outFile) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outFile), Charset.defaultCharset()),
+                65536);
+    }
+
+    private List<String> mapperInputs() {
+        final List<String> inputs = new ArrayList<>();
+        inputs.add(this.globalInput);
+        inputs.add(this.allEntriesInput);
+        return inputs;
+    }
 
+    private boolean isMapperRenderRequired(final File outFile, final List<String> inputs) {
+        final boolean changed = this.manifest.isRenderRequired(outFile.getPath(), inputs);
+        return changed || !this.config.incrementalBuild;
     }
 
     private void updateMapper(final Map<String, String> mapper, final EntriesWithFiles outerList) {
@@ -22,18 +22,18 @@
 package io.projectcastle.blogengine;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.ObjectInputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
 import java.io.Serializable;
-import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
 import java.util.Scanner;
 import java.util.Set;
@@ -44,6 +44,9 @@ import org.yaml.snakeyaml.DumperOptions.FlowStyle;
 import org.yaml.snakeyaml.Yaml;
 import org.yaml.snakeyaml.nodes.Tag;
 
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+
 public class BlogEntry implements Serializable, Comparable<BlogEntry> {
 
     private static final long serialVersionUID = 42L;
@@ -51,6 +54,14 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
     public static final String MARKDOW_SEPARATOR = "---";
     public static final String DATE_FORMAT       = "yyyy-MM-dd hh:mm";
 
+    // Author, location, status, series and categories repeat across
+    // thousands of entries, every entry shares one instance per value
+    private static final Interner<String> METADATA = Interners.newWeakInterner();
+
+    private static String intern(final String value) {
+        return (value == null) ? null : BlogEntry.METADATA.intern(value);
+    }
+
     /**
      * Loads a blog entry from a .blog file. File starts with Markdown for meta
      * data followed by Markdown or HTML content in one or two segments for
@@ -61,6 +72,20 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
      * @return the new blog entry
      */
     public static BlogEntry loadDataFromBlog(final InputStream in) {
+        return BlogEntry.loadDataFromBlog(in, true);
+    }
+
+    /**
+     * Loads a blog entry from a .blog file, optionally without converting
+     * its Markdown yet
+     *
+     * @param in
+     *            input stream for blog entry
+     * @param convertMarkdown
+     *            false keeps the Markdown for convertMarkdown
+     * @return the new blog entry
+     */
+    static BlogEntry loadDataFromBlog(final InputStream in, final boolean convertMarkdown) {
         BlogEntry result = null;
 
         final Scanner scanner = new Scanner(in);
@@ -118,9 +143,12 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
                     result.setMoreBody(rawMore.toString());
                 }
             } else {
-                result.setMainBody(MarkdownConverter.markdown2HtmlWithCode(rawBody.toString()));
+                result.mainMarkdown = rawBody.toString();
                 if (rawMore.length() > 0) {
-                    result.setMoreBody(MarkdownConverter.markdown2HtmlWithCode(rawMore.toString()));
+                    result.moreMarkdown = rawMore.toString();
+                }
+                if (convertMarkdown) {
+                    result.convertMarkdown();
                 }
             }
 
@@ -223,10 +251,13 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
 
     // If there's more to read
     private String                         moreBody = null;
-    private final Map<String, BlogComment> comments = new HashMap<String, BlogComment>();
+    // Markdown not converted yet, pipelined builds convert while pages render
+    private String                         mainMarkdown = null;
+    private String                         moreMarkdown = null;
+    // Comments come from their own files, a snapshot keeps them with those
+    private transient Map<String, BlogComment> comments = new HashMap<String, BlogComment>();
     // The following strings are redundant, but it
     // makes it easier to deal with the JSON then
-    private String allBody;
     private String shortDate;
     private String dateCategory;
 
@@ -240,7 +271,20 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
     private transient LinkItem nextItem = null;
     private final boolean      isBlog   = true;
 
-    private String description = null;
+    // Where the entry was loaded from
+    private transient String sourceFileName = null;
+
+    // Sort key and strings derived from publishDate, computed once per date
+    private transient PublishDateStrings dateStrings = null;
+
+    // Start of the text, computed on first use. Not named description, so
+    // templates go through the getter
+    private transient String descriptionText = null;
+
+    // Low memory builds drop HTML and comments between the pages that need
+    // them, overview pages still show how many comments there are
+    private transient boolean contentReleased      = false;
+    private transient int     releasedCommentCount = 0;
 
     /**
      * @param category
@@ -248,7 +292,7 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
      * @return the fluent blog
      */
     public BlogEntry addCategory(final String cat2add) {
-        this.getCategory().add(cat2add);
+        this.getCategory().add(BlogEntry.intern(cat2add));
         return this;
     }
 
@@ -280,6 +324,84 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
         return result;
     }
 
+    /**
+     * Drops the HTML and the comments. Description and comment count stay,
+     * so the entry can still be listed on overview pages
+     */
+    void releaseContent() {
+        this.getDescription();
+        if (!this.contentReleased) {
+            this.releasedCommentCount = this.comments.size();
+        }
+        this.contentReleased = true;
+        this.mainBody = null;
+        this.moreBody = null;
+        this.comments.clear();
+    }
+
+    /**
+     * Takes the HTML back from a fresh load of the same source file, comments
+     * get added again with addComment
+     *
+     * @param loaded
+     *            the entry as parsed from its file
+     */
+    void restoreContent(final BlogEntry loaded) {
+        this.contentReleased = false;
+        this.mainBody = loaded.mainBody;
+        this.moreBody = loaded.moreBody;
+    }
+
+    /**
+     * @param count
+     *            number of comments of an entry whose content was released
+     */
+    void setReleasedCommentCount(final int count) {
+        this.releasedCommentCount = count;
+    }
+
+    /**
+     * Turns Markdown kept back by loadDataFromBlog into the HTML bodies, does
+     * nothing once that happened
+     */
+    synchronized void convertMarkdown() {
+        if (this.mainMarkdown != null) {
+            this.setMainBody(MarkdownConverter.markdown2HtmlWithCode(this.mainMarkdown));
+            this.mainMarkdown = null;
+        }
+        if (this.moreMarkdown != null) {
+            this.setMoreBody(MarkdownConverter.markdown2HtmlWithCode(this.moreMarkdown));
+            this.moreMarkdown = null;
+        }
+    }
+
+    /**
+     * @return true if there is Markdown left to convert
+     */
+    synchronized boolean isMarkdownPending() {
+        return (this.mainMarkdown != null) || (this.moreMarkdown != null);
+    }
+
+    /**
+     * @return true while HTML and comments are released
+     */
+    boolean isContentReleased() {
+        return this.contentReleased;
+    }
+
+    /**
+     * Drops comments and navigation, so an entry parsed earlier can go into
+     * a freshly loaded blog
+     */
+    void resetRenderState() {
+        this.comments.clear();
+        this.allCategories = null;
+        this.allDateCategories = null;
+        this.seriesMember = null;
+        this.previousItem = null;
+        this.nextItem = null;
+    }
+
     public BlogEntry cleanupComments() {
         this.comments.forEach((key, entry) -> {
             final String candidate = entry.getComment();
@@ -302,20 +424,26 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
      * @see java.lang.Comparable#compareTo(java.lang.Object)
      */
     public int compareTo(final BlogEntry be) {
-        // TODO: Do we need to add the name?
-        final String thisString = Utils.date2ComparableString(this.getPublishDate());
-        final String thatString = Utils.date2ComparableString(be.getPublishDate());
-
-        return thisString.compareTo(thatString);
-
+        final int result = Long.compare(this.getSortKey(), be.getSortKey());
+        if ((result != 0) || (this.UNID == be.UNID)) {
+            return result;
+        }
+        // Same publish date: the UNID keeps both entries in a TreeSet
+        if (this.UNID == null) {
+            return -1;
+        }
+        return (be.UNID == null) ? 1 : this.UNID.compareTo(be.UNID);
     }
 
     /**
-     * @return the allBody
+     * @return main and more body, put together on each call
      */
     public String getAllBody() {
-        return this.allBody;
-    };
+        if (this.moreBody == null) {
+            return this.mainBody;
+        }
+        return (this.mainBody == null) ? this.moreBody : this.mainBody + this.moreBody;
+    }
 
     /**
      * @return the allCategories
@@ -340,10 +468,11 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
     }
 
     public String getCommentCount() {
-        if ((this.comments == null) || this.comments.isEmpty()) {
+        final int count = this.contentReleased ? this.releasedCommentCount : this.comments.size();
+        if (count == 0) {
             return "0";
         }
-        return Integer.toHexString(this.comments.size());
+        return Integer.toHexString(count);
     }
 
     /**
@@ -367,23 +496,32 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
     }
 
     public String getDateMonth() {
-        return this.somePublishDateString("MMMM");
+        return this.getDateStrings().month;
     }
 
     public String getDateMonthNumber() {
-        return this.somePublishDateString("MM");
+        return this.getDateStrings().monthNumber;
     }
 
     public String getDateURL() {
-        return this.somePublishDateString("yyyy/MM");
+        return this.getDateStrings().url;
     }
 
     public String getDateYear() {
-        return this.somePublishDateString("yyyy");
+        return this.getDateStrings().year;
     }
 
+    /**
+     * @return the start of the text, computed on first use
+     */
     public String getDescription() {
-        return this.description;
+        if (this.descriptionText == null) {
+            final String allBody = this.getAllBody();
+            if (allBody != null) {
+                this.descriptionText = Utils.getTextFromHTML(allBody, 200);
+            }
+        }
+        return this.descriptionText;
     }
 
     public Collection<LinkItem> getDisplayCategories() {
@@ -456,11 +594,11 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
     }
 
     public String getPublishDateString() {
-        return this.somePublishDateString(BlogEntry.DATE_FORMAT);
+        return this.getDateStrings().full;
     }
 
     public String getPublishDateStringShort() {
-        return this.somePublishDateString("MMMM yyyy");
+        return this.getDateStrings().monthYear;
     }
 
     public String getSeries() {
@@ -481,6 +619,14 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
         return this.shortDate;
     }
 
+    /**
+     * @return numeric form of the publish date, same order as
+     *         Utils.date2ComparableString
+     */
+    long getSortKey() {
+        return this.getDateStrings().sortKey;
+    }
+
     /**
      * @return the blogSourceType
      */
@@ -488,6 +634,13 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
         return this.sourceType;
     }
 
+    /**
+     * @return the file the entry was loaded from
+     */
+    public String getSourceFileName() {
+        return this.sourceFileName;
+    }
+
     public String getStatus() {
         return this.status;
     }
@@ -542,11 +695,12 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
     }
 
     public void setAuthor(final String author) {
-        this.author = author;
+        this.author = BlogEntry.intern(author);
     }
 
     public void setCategory(final List<String> category) {
-        this.category = category;
+        this.category = new ArrayList<>(category.size());
+        category.forEach(this::addCategory);
     }
 
     /**
@@ -569,7 +723,7 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
     }
 
     public void setLocation(final String location) {
-        this.location = location;
+        this.location = BlogEntry.intern(location);
     }
 
     /**
@@ -577,16 +731,8 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
      *            the mainBody to set
      */
     public void setMainBody(final String mainBody) {
-
         this.mainBody = mainBody;
-
-        if (this.moreBody == null) {
-            this.allBody = this.mainBody;
-        } else {
-            this.allBody = this.mainBody + this.moreBody;
-        }
-
-        this.description = Utils.getTextFromHTML(this.allBody, 200);
+        this.descriptionText = null;
     }
 
     /**
@@ -595,14 +741,7 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
      */
     public void setMoreBody(final String moreBody) {
         this.moreBody = moreBody;
-
-        if (this.mainBody == null) {
-            this.allBody = this.moreBody;
-        } else {
-            this.allBody = this.mainBody + this.moreBody;
-        }
-
-        this.description = Utils.getTextFromHTML(this.allBody, 200);
+        this.descriptionText = null;
     }
 
     /**
@@ -631,12 +770,13 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
      */
     public void setPublishDate(final Date publishDate) {
         this.publishDate = publishDate;
+        this.dateStrings = null;
         this.shortDate = this.getPublishDateString();
         this.dateCategory = this.getPublishDateStringShort();
     }
 
     public void setSeries(final String series) {
-        this.series = series;
+        this.series = BlogEntry.intern(series);
     }
 
     public void setSeriesMember(final List<LinkItem> seriesMember) {
@@ -653,8 +793,16 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
         this.sourceType = ("M".equalsIgnoreCase(String.valueOf(blogSourceType).substring(0, 1))) ? "MARKDOWN" : "HTML";
     }
 
+    /**
+     * @param sourceFileName
+     *            the file the entry was loaded from
+     */
+    public void setSourceFileName(final String sourceFileName) {
+        this.sourceFileName = sourceFileName;
+    }
+
     public void setStatus(final String status) {
-        this.status = status;
+        this.status = BlogEntry.intern(status);
     }
 
     public void setTitle(final String title) {
@@ -672,6 +820,18 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
         return out.toString();
     }
 
+    // Entries from a model snapshot share their metadata strings too
+    private void readObject(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.comments = new HashMap<String, BlogComment>();
+        this.author = BlogEntry.intern(this.author);
+        this.location = BlogEntry.intern(this.location);
+        this.status = BlogEntry.intern(this.status);
+        this.series = BlogEntry.intern(this.series);
+        this.sourceType = BlogEntry.intern(this.sourceType);
+        this.category.replaceAll(BlogEntry::intern);
+    }
+
     private void nonNullMapEntry(final Map<String, Object> target, final String key, final Object value) {
         if ((key == null) || (value == null) || String.valueOf(value).equals("")) {
             return;
@@ -679,9 +839,40 @@ public class BlogEntry implements Serializable, Comparable<BlogEntry> {
         target.put(key, value);
     }
 
-    private String somePublishDateString(final String format) {
-        final Date candidate = (this.getPublishDate() == null) ? new Date() : this.getPublishDate();
-        final SimpleDateFormat sdf = new SimpleDateFormat(format, Locale.US);
-        return sdf.format(candidate);
+    private PublishDateStrings getDateStrings() {
+        final PublishDateStrings current = this.dateStrings;
+        if ((current != null) && (current.date == this.publishDate)) {
+            return current;
+        }
+        final PublishDateStrings result = new PublishDateStrings(this.publishDate);
+        this.dateStrings = result;
+        return result;
+    }
+
+    /**
+     * Everything Mustache and the sorting derive from the publish date.
+     * Immutable, so it can be shared between render threads
+     */
+    private static final class PublishDateStrings {
+        final Date   date;
+        final long   sortKey;
+        final String year;
+        final String month;
+        final String monthNumber;
+        final String url;
+        final String full;
+        final String monthYear;
+
+        PublishDateStrings(final Date date) {
+            this.date = date;
+            final Date candidate = (date == null) ? new Date() : date;
+            this.sortKey = Utils.date2SortKey(candidate);
+            this.year = BlogDates.format(candidate, BlogDates.YEAR);
+            this.month = BlogDates.format(candidate, BlogDates.MONTH_NAME);
+            this.monthNumber = BlogDates.format(candidate, BlogDates.MONTH_NUMBER);
+            this.url = BlogDates.format(candidate, BlogDates.YEAR_MONTH_PATH);
+            this.full = BlogDates.format(candidate, BlogDates.ENTRY_DATE);
+            this.monthYear = BlogDates.format(candidate, BlogDates.MONTH_YEAR);
+        }
     }
 }
@@ -25,6 +25,11 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 
+/**
+ * List of entries that stays sorted by publish date, newest first when
+ * reverseRun is set. Entries are inserted at their place, so filling the
+ * list doesn't sort it again on every add
+ */
 public class BlogEntryCollection extends ArrayList<BlogEntry> {
 
 	private static final long serialVersionUID = 2L;
@@ -42,21 +47,51 @@ public class BlogEntryCollection extends ArrayList<BlogEntry> {
 
 	@Override
 	public boolean add(final BlogEntry e) {
-		final boolean result = super.add(e);
-		Collections.sort(this);
-		if (this.reverseSortOrder) {
-			Collections.reverse(this);
+		final int size = this.size();
+		if ((size == 0) || (this.order(this.get(size - 1), e) <= 0)) {
+			// Common case: entries arrive in sort order
+			return super.add(e);
 		}
-		return result;
+		// Binary search for the first entry sorting after e
+		int low = 0;
+		int high = size - 1;
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (this.order(this.get(mid), e) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
+		}
+		super.add(low, e);
+		return true;
 	}
 
 	@Override
 	public boolean addAll(final Collection<? extends BlogEntry> c) {
 		final boolean result = super.addAll(c);
-		Collections.sort(this);
-		if (this.reverseSortOrder) {
+		// Input from a TreeSet is sorted already, one way or the other
+		if (this.isSorted(1)) {
+			return result;
+		}
+		if (this.isSorted(-1)) {
 			Collections.reverse(this);
+		} else {
+			this.sort(this::order);
 		}
 		return result;
 	}
+
+	private boolean isSorted(final int direction) {
+		for (int i = 1; i < this.size(); i++) {
+			if ((direction * this.order(this.get(i - 1), this.get(i))) > 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int order(final BlogEntry first, final BlogEntry second) {
+		return this.reverseSortOrder ? second.compareTo(first) : first.compareTo(second);
+	}
 }
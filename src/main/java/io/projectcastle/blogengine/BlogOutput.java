@@ -23,12 +23,13 @@ package io.projectcastle.blogengine;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.util.Arrays;
+import java.util.concurrent.Future;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Document.OutputSettings;
@@ -36,14 +37,16 @@ import org.jsoup.nodes.Document.OutputSettings.Syntax;
 import org.jsoup.nodes.Entities.EscapeMode;
 
 import com.google.common.base.Charsets;
-import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 
 /**
  * Specialized Output Stream for Blog handling
  * It cleans a HTML Stream that was written to it to make it pretty
  * and only saves when the content of an eventual existing file
- * has changed bytes compared to the content written to this Stream
+ * has changed bytes compared to the content written to this Stream.
+ * With an OutputDigestIndex unchanged files are recognized by their
+ * hash, without reading them. Unless Jsoup pretty printing is used the
+ * stream can go straight to disk instead of being buffered
  * 
  * @author swissel
  *
@@ -51,26 +54,99 @@ import com.google.common.io.Files;
 public class BlogOutput extends OutputStream {
 
     private static final int            OUT_SIZE = 102400;
-    private final ByteArrayOutputStream out;
+    private final OutputStream          out;
+    private final ByteArrayOutputStream buffer;
+    private final StreamingFileOutput   streamingOut;
     private final String                outputFileName;
-    private final boolean cleanupHTML;
+    private final HtmlOutputMode        mode;
+    private final OutputDigestIndex     digestIndex;
 
     public BlogOutput(final String fileName) {
-        this.outputFileName = fileName;
-        this.cleanupHTML = false;
-        this.out = new ByteArrayOutputStream(BlogOutput.OUT_SIZE);
+        this(fileName, HtmlOutputMode.PASSTHROUGH, false, null);
     }
     
     public BlogOutput(final String location, final boolean cleanupHTML) {
+        this(location, cleanupHTML ? HtmlOutputMode.JSOUP : HtmlOutputMode.PASSTHROUGH, false, null);
+    }
+
+    /**
+     * @param location
+     *            the target file
+     * @param mode
+     *            what to do with the HTML, JSOUP needs the whole page in
+     *            memory
+     * @param streaming
+     *            write straight to disk, ignored for JSOUP
+     * @param digestIndex
+     *            hashes of the previous run, can be null
+     */
+    public BlogOutput(final String location, final HtmlOutputMode mode, final boolean streaming,
+            final OutputDigestIndex digestIndex) {
         this.outputFileName = location;
-        this.cleanupHTML = cleanupHTML;
-        this.out = new ByteArrayOutputStream(BlogOutput.OUT_SIZE);
+        this.mode = mode;
+        this.digestIndex = digestIndex;
+        final OutputStream target;
+        if (streaming && (mode != HtmlOutputMode.JSOUP)) {
+            this.buffer = null;
+            this.streamingOut = new StreamingFileOutput(new File(location));
+            target = this.streamingOut;
+        } else {
+            this.buffer = new ByteArrayOutputStream(BlogOutput.OUT_SIZE);
+            this.streamingOut = null;
+            target = this.buffer;
+        }
+        this.out = (mode == HtmlOutputMode.NORMALIZE) ? new HtmlWhitespaceNormalizer(target) : target;
     }
 
     @Override
     public void close() throws IOException {
         this.out.close();
-        this.save();
+        if (this.streamingOut != null) {
+            this.streamingOut.commit(this.digestIndex);
+        } else {
+            this.save(this.getBytesToSave());
+        }
+    }
+
+    /**
+     * Like close, but comparing with the existing file, writing and moving
+     * it into place run on the I/O executor. Jsoup formatting stays on the
+     * calling thread
+     *
+     * @param io
+     *            runs the file operations
+     * @param committed
+     *            runs on the I/O thread once the page is on disk, not when
+     *            saving failed
+     * @return true once the target file was replaced
+     * @throws IOException
+     */
+    public Future<Boolean> closeOn(final IoExecutor io, final Runnable committed) throws IOException {
+        this.out.close();
+        if (this.streamingOut != null) {
+            return io.submit(() -> {
+                final boolean replaced = this.streamingOut.commit(this.digestIndex);
+                committed.run();
+                return replaced;
+            });
+        }
+        final byte[] saveCandidate = this.getBytesToSave();
+        return io.submit(() -> {
+            final boolean replaced = this.save(saveCandidate);
+            committed.run();
+            return replaced;
+        });
+    }
+
+    /**
+     * Drops everything written so far, the target file stays untouched
+     */
+    public void discard() {
+        if (this.streamingOut != null) {
+            this.streamingOut.discard();
+        } else {
+            this.buffer.reset();
+        }
     }
 
     @Override
@@ -95,9 +171,9 @@ public class BlogOutput extends OutputStream {
     }
     
     private byte[] getBytesToSave() {
-        if (this.cleanupHTML) {
+        if (this.mode == HtmlOutputMode.JSOUP) {
             // Make really pretty HTML
-            Document htmlDoc = Jsoup.parse(new String(this.out.toByteArray(),Charsets.UTF_8));
+            Document htmlDoc = Jsoup.parse(new String(this.buffer.toByteArray(),Charsets.UTF_8));
             OutputSettings outputSettings = new OutputSettings();
             outputSettings.indentAmount(4);
             outputSettings.escapeMode(EscapeMode.extended);
@@ -106,11 +182,11 @@ public class BlogOutput extends OutputStream {
             htmlDoc.outputSettings(outputSettings);
             return htmlDoc.outerHtml().getBytes();
         } else {
-            return this.out.toByteArray();
+            return this.buffer.toByteArray();
         }        
     }
     
-    private boolean isSaveRequired(final byte[] payload) {
+    private boolean isSaveRequired(final byte[] payload, final String payloadHash) {
         final File targetFile = new File(this.outputFileName);
         if (targetFile.isDirectory()) {
             System.err.println("Directory encountered!" + this.outputFileName);
@@ -118,12 +194,22 @@ public class BlogOutput extends OutputStream {
         }
         boolean saveThis = true;
         if (targetFile.exists()) {
-            byte[] existingByte;
-            try {
-                existingByte = Files.asByteSource(targetFile).read();
-                saveThis = !Arrays.equals(existingByte, payload);
-            } catch (final IOException e) {
-                saveThis = true;
+            final Boolean unchanged = (this.digestIndex == null) ? null
+                    : this.digestIndex.isUnchanged(targetFile, payloadHash, payload.length);
+            if (unchanged != null) {
+                saveThis = !unchanged.booleanValue();
+            } else {
+                // Index missing or stale, compare with the file content
+                byte[] existingByte;
+                try {
+                    existingByte = Files.asByteSource(targetFile).read();
+                    saveThis = !Arrays.equals(existingByte, payload);
+                } catch (final IOException e) {
+                    saveThis = true;
+                }
+                if (!saveThis && (this.digestIndex != null)) {
+                    this.digestIndex.record(targetFile, payloadHash);
+                }
             }
 
             if (saveThis) {
@@ -136,26 +222,26 @@ public class BlogOutput extends OutputStream {
     /**
      * Saves the output stream if it has been modified
      * 
-     * @return true if it has been saved - false if not
+     * @param saveCandidate
+     *            the final bytes of the page
+     * @return true if it has been saved - false if it didn't change
+     * @throws IOException
+     *             when the page couldn't be written
      */
-    private boolean save() {
-        final byte[] saveCandidate = this.getBytesToSave();
-        if(this.isSaveRequired(saveCandidate)) {
+    private boolean save(final byte[] saveCandidate) throws IOException {
+        final String payloadHash = (this.digestIndex == null) ? null : DigestUtils.sha256Hex(saveCandidate);
+        if(this.isSaveRequired(saveCandidate, payloadHash)) {
             final File targetFile = new File(this.outputFileName);
-            try {
-                // Ensure the directory structure exists
-                Files.createParentDirs(targetFile);
-                FileOutputStream finalOut = new FileOutputStream(targetFile);
+            // Ensure the directory structure exists
+            Files.createParentDirs(targetFile);
+            try (FileOutputStream finalOut = new FileOutputStream(targetFile)) {
                 finalOut.write(saveCandidate);
                 finalOut.flush();
-                Closeables.close(finalOut, true);
-                return true;
-            } catch (final FileNotFoundException e) {
-                e.printStackTrace();
-            } catch (final IOException e) {
-                e.printStackTrace();
             }
-            System.out.println("\n+" + targetFile);
+            if (this.digestIndex != null) {
+                this.digestIndex.record(targetFile, payloadHash);
+            }
+            return true;
         }
         
         return false;
@@ -0,0 +1,236 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Remembers what went into the last build: a content hash per source file
+ * (templates, .blog files, comments, file definitions) and a digest of all
+ * inputs of each rendered page. A page only needs to be rendered again when
+ * the digest of its current inputs differs from the recorded one
+ *
+ * @author stw
+ *
+ */
+public class BuildManifest {
+
+    /**
+     * What we know about one file on disk
+     */
+    static class SourceState {
+        long   lastModified;
+        long   length;
+        String hash;
+
+        SourceState(final long lastModified, final long length, final String hash) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    /**
+     * The manifest of a full build: every page gets rendered, no file gets
+     * hashed and nothing is saved
+     */
+    private static final class FullBuild extends BuildManifest {
+
+        @Override
+        public BuildManifest carryOver() {
+            return this;
+        }
+
+        @Override
+        public String fileToken(final File sourceFile) {
+            return sourceFile.getAbsolutePath();
+        }
+
+        @Override
+        public boolean isRenderRequired(final String outputFileName, final Collection<String> inputs) {
+            return true;
+        }
+
+        @Override
+        public void pageWritten(final String outputFileName, final Collection<String> inputs) {
+            // Nothing to remember
+        }
+
+        @Override
+        public void save(final File destination) {
+            // A full build leaves the manifest of the last incremental one alone
+        }
+    }
+
+    /**
+     * @return a manifest for builds with incrementalBuild off
+     */
+    public static BuildManifest fullBuild() {
+        return new FullBuild();
+    }
+
+    /**
+     * Loads the manifest of the previous run
+     *
+     * @param source
+     *            the manifest file
+     * @return the manifest, empty when there was no previous run
+     */
+    public static BuildManifest load(final File source) {
+        BuildManifest result = null;
+        if (source.exists()) {
+            try (Reader in = Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8)) {
+                final Gson gson = new GsonBuilder().create();
+                result = gson.fromJson(in, BuildManifest.class);
+            } catch (final Exception e) {
+                System.err.println("Build manifest unreadable, doing a full build: " + e.getMessage());
+            }
+        }
+        return (result == null) ? new BuildManifest() : result;
+    }
+
+    // State of the previous run, as loaded from disk
+    private Map<String, SourceState> sources = new HashMap<>();
+    private Map<String, String>      pages   = new HashMap<>();
+
+    // State of the current run, written at the end
+    private final transient Map<String, SourceState> currentSources = new ConcurrentHashMap<>();
+    private final transient Map<String, String>      currentPages   = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the content hash of a file. The hash of the previous run is
+     * reused when size and modification date didn't change, so unchanged
+     * files don't get read again
+     *
+     * @param sourceFile
+     *            the file to check
+     * @return path and content hash, usable as page input
+     */
+    public String fileToken(final File sourceFile) {
+        final String path = sourceFile.getAbsolutePath();
+        final SourceState state = this.currentSources.computeIfAbsent(path, p -> {
+            final long lastModified = sourceFile.lastModified();
+            final long length = sourceFile.length();
+            final SourceState previous = this.sources.get(p);
+            if ((previous != null) && (previous.lastModified == lastModified) && (previous.length == length)) {
+                return previous;
+            }
+            return new SourceState(lastModified, length, BuildManifest.hashFile(sourceFile));
+        });
+        return path + "=" + state.hash;
+    }
+
+    /**
+     * Checks if a page needs to be rendered. An unchanged page keeps its
+     * inputs for the next run, a changed one only gets them with pageWritten,
+     * so a page that fails to render or to save gets rendered again
+     *
+     * @param outputFileName
+     *            the page location on disk
+     * @param inputs
+     *            everything that determines the content of the page
+     * @return true if the inputs changed or the page doesn't exist
+     */
+    public boolean isRenderRequired(final String outputFileName, final Collection<String> inputs) {
+        final String digest = BuildManifest.inputDigest(inputs);
+        final boolean required = !digest.equals(this.pages.get(outputFileName))
+                || !new File(outputFileName).exists();
+        if (!required) {
+            this.currentPages.put(outputFileName, digest);
+        }
+        return required;
+    }
+
+    /**
+     * Remembers the inputs of a page that is on disk now. Safe to call from
+     * any thread
+     *
+     * @param outputFileName
+     *            the page location on disk
+     * @param inputs
+     *            the inputs given to isRenderRequired
+     */
+    public void pageWritten(final String outputFileName, final Collection<String> inputs) {
+        this.currentPages.put(outputFileName, BuildManifest.inputDigest(inputs));
+    }
+
+    /**
+     * Starts the next run in the same process, without going through disk
+     *
+     * @return manifest that knows the file hashes of this run
+     */
+    public BuildManifest carryOver() {
+        final BuildManifest result = new BuildManifest();
+        result.sources = new HashMap<>(this.currentSources);
+        result.pages = new HashMap<>(this.currentPages);
+        return result;
+    }
+
+    /**
+     * Saves the state of the current run for the next one
+     *
+     * @param destination
+     *            the manifest file
+     */
+    public void save(final File destination) {
+        this.sources = new HashMap<>(this.currentSources);
+        this.pages = new HashMap<>(this.currentPages);
+        try (Writer out = Files.newBufferedWriter(destination.toPath(), StandardCharsets.UTF_8)) {
+            final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+            gson.toJson(this, out);
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String inputDigest(final Collection<String> inputs) {
+        return DigestUtils.sha256Hex(String.join("\n", inputs));
+    }
+
+    static String hashFile(final File sourceFile) {
+        if (!sourceFile.exists()) {
+            return "missing";
+        }
+        try (InputStream in = new FileInputStream(sourceFile)) {
+            return DigestUtils.sha256Hex(in);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return "unreadable";
+        }
+    }
+}
@@ -0,0 +1,317 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.gson.GsonBuilder;
+
+/**
+ * Wall time, CPU time, allocated bytes and item counts per build phase,
+ * with the slowest items of each phase. A phase measures the thread that
+ * opened it, items measure the thread they run on, so work on worker pools
+ * gets counted too. Nested phases, like Markdown inside loading, only count
+ * their items. Safe to use from multiple threads
+ *
+ * @author stw
+ *
+ */
+public class BuildMetrics {
+
+    public static final String WALK             = "walk";
+    public static final String SNAPSHOT         = "snapshot";
+    public static final String YAML             = "yaml parse";
+    public static final String MARKDOWN         = "markdown";
+    public static final String COMMENTS         = "comments";
+    public static final String FILE_DEFINITIONS = "file definitions";
+    public static final String PREPARE          = "prepare";
+    public static final String ENTRY_RENDER     = "entry render";
+    public static final String OVERVIEW_RENDER  = "overview render";
+    public static final String ATTACHMENTS      = "attachments";
+    public static final String INDEX            = "index";
+    public static final String RSS              = "rss";
+    public static final String NOT_FOUND        = "404";
+    public static final String SERIES           = "series";
+    public static final String IMPRINT          = "imprint";
+    public static final String MAPPERS          = "mappers";
+    public static final String WRITES           = "pending writes";
+
+    private static final int SLOWEST_ITEMS = 5;
+
+    /**
+     * Totals of one phase
+     */
+    private static class PhaseRecord {
+        final String         name;
+        final boolean        nested;
+        final List<SlowItem> slowest        = new ArrayList<>();
+        long                 wallNanos      = 0;
+        long                 cpuNanos       = 0;
+        long                 allocatedBytes = 0;
+        int                  items          = 0;
+        // Thread that has the phase open, its items are in the phase totals
+        volatile long        owner          = -1;
+
+        PhaseRecord(final String name, final boolean nested) {
+            this.name = name;
+            this.nested = nested;
+        }
+
+        synchronized void add(final long wall, final long cpu, final long allocated) {
+            this.wallNanos += wall;
+            this.cpuNanos += cpu;
+            this.allocatedBytes += allocated;
+        }
+
+        synchronized void addItem(final String itemName, final long wall) {
+            this.items++;
+            if ((this.slowest.size() < BuildMetrics.SLOWEST_ITEMS)
+                    || (wall > this.slowest.get(this.slowest.size() - 1).nanos)) {
+                int pos = this.slowest.size();
+                while ((pos > 0) && (this.slowest.get(pos - 1).nanos < wall)) {
+                    pos--;
+                }
+                this.slowest.add(pos, new SlowItem(itemName, wall));
+                if (this.slowest.size() > BuildMetrics.SLOWEST_ITEMS) {
+                    this.slowest.remove(BuildMetrics.SLOWEST_ITEMS);
+                }
+            }
+        }
+    }
+
+    private static class SlowItem {
+        final String name;
+        final long   nanos;
+
+        SlowItem(final String name, final long nanos) {
+            this.name = name;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Where the current thread stands, to compute the difference later
+     */
+    private class Mark {
+        final long wall      = System.nanoTime();
+        final long cpu       = BuildMetrics.this.threadCpu();
+        final long allocated = BuildMetrics.this.threadAllocated();
+    }
+
+    /**
+     * An open phase, closing it adds the time of the opening thread
+     */
+    public final class Phase implements AutoCloseable {
+        private final PhaseRecord record;
+        private final Mark        start = new Mark();
+
+        Phase(final PhaseRecord record) {
+            this.record = record;
+            record.owner = Thread.currentThread().threadId();
+        }
+
+        @Override
+        public void close() {
+            final Mark end = new Mark();
+            this.record.owner = -1;
+            this.record.add(end.wall - this.start.wall, end.cpu - this.start.cpu,
+                    end.allocated - this.start.allocated);
+        }
+    }
+
+    /**
+     * One measured item of a phase, e.g. a file or a page
+     */
+    public final class Item implements AutoCloseable {
+        private final PhaseRecord record;
+        private final String      name;
+        private final Mark        start = new Mark();
+
+        Item(final PhaseRecord record, final String name) {
+            this.record = record;
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            final Mark end = new Mark();
+            final long wall = end.wall - this.start.wall;
+            if (this.record.nested) {
+                this.record.add(wall, end.cpu - this.start.cpu, end.allocated - this.start.allocated);
+            } else if (this.record.owner != Thread.currentThread().threadId()) {
+                // Worker thread, the phase doesn't see it
+                this.record.add(0, end.cpu - this.start.cpu, end.allocated - this.start.allocated);
+            }
+            this.record.addItem(this.name, wall);
+        }
+    }
+
+    private final Map<String, PhaseRecord> phases  = new LinkedHashMap<>();
+    private final ThreadMXBean             threads = ManagementFactory.getThreadMXBean();
+    private final boolean                  cpuSupported;
+    private final boolean                  allocationSupported;
+    private final Date                     started = new Date();
+    private final long                     startedNanos = System.nanoTime();
+
+    public BuildMetrics() {
+        this.cpuSupported = this.threads.isCurrentThreadCpuTimeSupported();
+        if (this.cpuSupported && !this.threads.isThreadCpuTimeEnabled()) {
+            this.threads.setThreadCpuTimeEnabled(true);
+        }
+        boolean allocation = false;
+        if (this.threads instanceof com.sun.management.ThreadMXBean) {
+            final com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) this.threads;
+            allocation = sunThreads.isThreadAllocatedMemorySupported();
+            if (allocation && !sunThreads.isThreadAllocatedMemoryEnabled()) {
+                sunThreads.setThreadAllocatedMemoryEnabled(true);
+            }
+        }
+        this.allocationSupported = allocation;
+    }
+
+    /**
+     * Opens a phase, a phase opened again adds to its totals
+     *
+     * @param name
+     *            name of the phase
+     * @return the open phase, to be closed at its end
+     */
+    public Phase phase(final String name) {
+        return new Phase(this.record(name, false));
+    }
+
+    /**
+     * Announces a phase that happens inside other phases, only its items
+     * count
+     *
+     * @param name
+     *            name of the phase
+     */
+    public void nestedPhase(final String name) {
+        this.record(name, true);
+    }
+
+    /**
+     * Starts measuring an item on the current thread
+     *
+     * @param phaseName
+     *            the phase the item belongs to
+     * @param itemName
+     *            shown in the slowest items
+     * @return the item, to be closed when it is done
+     */
+    public Item item(final String phaseName, final String itemName) {
+        return new Item(this.record(phaseName, false), itemName);
+    }
+
+    /**
+     * Prints one line per phase
+     */
+    public void printSummary() {
+        System.out.println(String.format(Locale.US, "%-18s %10s %10s %12s %8s  %s", "Phase", "wall ms", "cpu ms",
+                "alloc MB", "items", "slowest"));
+        for (final PhaseRecord record : this.records()) {
+            synchronized (record) {
+                final String slowest = record.slowest.isEmpty() ? ""
+                        : record.slowest.get(0).name + " (" + (record.slowest.get(0).nanos / 1000000) + " ms)";
+                System.out.println(String.format(Locale.US, "%-18s %10d %10s %12s %8d  %s",
+                        (record.nested ? "  " : "") + record.name, record.wallNanos / 1000000,
+                        this.cpuSupported ? String.valueOf(record.cpuNanos / 1000000) : "-",
+                        this.allocationSupported
+                                ? String.format(Locale.US, "%.1f", record.allocatedBytes / (1024.0 * 1024.0))
+                                : "-",
+                        record.items, slowest));
+            }
+        }
+    }
+
+    /**
+     * Writes all phases as JSON
+     *
+     * @param destination
+     *            the report file
+     */
+    public void save(final File destination) {
+        final Map<String, Object> report = new LinkedHashMap<>();
+        report.put("started", BlogDates.format(this.started, BlogDates.RSS_DATE));
+        report.put("totalWallMillis", (System.nanoTime() - this.startedNanos) / 1000000);
+        report.put("cpuTimeMeasured", this.cpuSupported);
+        report.put("allocationMeasured", this.allocationSupported);
+        final List<Map<String, Object>> phaseReports = new ArrayList<>();
+        for (final PhaseRecord record : this.records()) {
+            final Map<String, Object> phase = new LinkedHashMap<>();
+            synchronized (record) {
+                phase.put("name", record.name);
+                phase.put("nested", record.nested);
+                phase.put("wallMillis", record.wallNanos / 1000000);
+                phase.put("cpuMillis", record.cpuNanos / 1000000);
+                phase.put("allocatedBytes", record.allocatedBytes);
+                phase.put("items", record.items);
+                final List<Map<String, Object>> slowest = new ArrayList<>();
+                for (final SlowItem item : record.slowest) {
+                    final Map<String, Object> slow = new LinkedHashMap<>();
+                    slow.put("name", item.name);
+                    slow.put("wallMillis", item.nanos / 1000000.0);
+                    slowest.add(slow);
+                }
+                phase.put("slowest", slowest);
+            }
+            phaseReports.add(phase);
+        }
+        report.put("phases", phaseReports);
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(destination), StandardCharsets.UTF_8)) {
+            new GsonBuilder().setPrettyPrinting().disableHtmlEscaping().create().toJson(report, out);
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized PhaseRecord record(final String name, final boolean nested) {
+        return this.phases.computeIfAbsent(name, n -> new PhaseRecord(n, nested));
+    }
+
+    private synchronized List<PhaseRecord> records() {
+        return new ArrayList<>(this.phases.values());
+    }
+
+    private long threadCpu() {
+        return this.cpuSupported ? this.threads.getCurrentThreadCpuTime() : 0;
+    }
+
+    private long threadAllocated() {
+        return this.allocationSupported ? ((com.sun.management.ThreadMXBean) this.threads)
+                .getThreadAllocatedBytes(Thread.currentThread().threadId()) : 0;
+    }
+}
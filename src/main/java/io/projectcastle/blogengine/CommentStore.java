@@ -0,0 +1,212 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Reads comments from single comment files (.json, .comment) and from
+ * comment packs: one append-only file per entry with one comment JSON per
+ * line. A blog with many comments opens one pack per entry instead of one
+ * file per comment
+ *
+ * @author stw
+ *
+ */
+public class CommentStore {
+
+    public static final String  PACK_EXTENSION = ".jsonl";
+    // Date of the original comment file, the fallback for created
+    private static final String FILE_MODIFIED  = "fileModified";
+
+    /**
+     * @param candidate
+     *            a file in the comment directory
+     * @return true if it contains comments
+     */
+    public static boolean isCommentFile(final File candidate) {
+        final String name = candidate.getName();
+        return name.endsWith(".comment") || name.endsWith(".json") || name.endsWith(CommentStore.PACK_EXTENSION);
+    }
+
+    /**
+     * Reads all comments of a comment file or pack, safe to call from any
+     * thread
+     *
+     * @param source
+     *            the file
+     * @return the comments, in file order
+     */
+    public static List<BlogComment> load(final File source) {
+        if (!source.getName().endsWith(CommentStore.PACK_EXTENSION)) {
+            return Collections.singletonList(BlogComment.loadFromJson(source));
+        }
+        try (BufferedReader in = Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8)) {
+            return CommentStore.loadPack(source, in, source.lastModified());
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Parses the comments of a comment file or pack that was read by the
+     * caller, e.g. on an I/O thread, so parsing touches no file
+     *
+     * @param source
+     *            the file the content came from
+     * @param content
+     *            the bytes of the file
+     * @param lastModified
+     *            date of the file
+     * @return the comments, in file order
+     */
+    public static List<BlogComment> load(final File source, final byte[] content, final long lastModified) {
+        if (!source.getName().endsWith(CommentStore.PACK_EXTENSION)) {
+            final Reader in = new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8);
+            return Collections.singletonList(
+                    BlogComment.loadFromJson(in, source.getAbsolutePath(), new Date(lastModified)));
+        }
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(content), StandardCharsets.UTF_8))) {
+            return CommentStore.loadPack(source, in, lastModified);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            return new ArrayList<>();
+        }
+    }
+
+    private static List<BlogComment> loadPack(final File source, final BufferedReader in, final long lastModified)
+            throws IOException {
+        final List<BlogComment> result = new ArrayList<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.trim().isEmpty()) {
+                continue;
+            }
+            try {
+                final JsonObject rawComment = JsonParser.parseString(line).getAsJsonObject();
+                final long modified = rawComment.has(CommentStore.FILE_MODIFIED)
+                        ? rawComment.get(CommentStore.FILE_MODIFIED).getAsLong()
+                        : lastModified;
+                result.add(BlogComment.loadFromJson(rawComment, source.getAbsolutePath(), new Date(modified)));
+            } catch (final RuntimeException e) {
+                // e.g. a line cut short by an interrupted append
+                System.err.println(source.getAbsolutePath() + ":" + lineNumber + " skipped: " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Moves all single comment files into one pack per entry, appending to
+     * existing packs. A comment file is only deleted after its pack got
+     * written
+     *
+     * @param commentDirectory
+     *            root of the comments
+     * @return number of comments packed
+     * @throws IOException
+     */
+    public static int pack(final File commentDirectory) throws IOException {
+        final List<File> commentFiles = new ArrayList<>();
+        CommentStore.collectSingleFiles(commentDirectory, commentFiles);
+        final Map<String, List<File>> filesByPack = new TreeMap<>();
+        final Map<String, List<String>> linesByPack = new TreeMap<>();
+
+        for (final File commentFile : commentFiles) {
+            final JsonObject rawComment;
+            try (Reader in = Files.newBufferedReader(commentFile.toPath(), StandardCharsets.UTF_8)) {
+                rawComment = JsonParser.parseReader(in).getAsJsonObject();
+            } catch (final IOException | RuntimeException e) {
+                System.err.println("Not packed, can't read " + commentFile.getAbsolutePath() + ": " + e.getMessage());
+                continue;
+            }
+            rawComment.addProperty(CommentStore.FILE_MODIFIED, commentFile.lastModified());
+            final String packName = CommentStore.packName(CommentStore.parentId(rawComment));
+            filesByPack.computeIfAbsent(packName, k -> new ArrayList<>()).add(commentFile);
+            linesByPack.computeIfAbsent(packName, k -> new ArrayList<>()).add(rawComment.toString());
+        }
+
+        int count = 0;
+        for (final Map.Entry<String, List<String>> pack : linesByPack.entrySet()) {
+            final File packFile = new File(commentDirectory, pack.getKey());
+            Files.write(packFile.toPath(), pack.getValue(), StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.APPEND);
+            for (final File packed : filesByPack.get(pack.getKey())) {
+                Files.delete(packed.toPath());
+            }
+            count += pack.getValue().size();
+        }
+        System.out.println(count + " comments packed into " + linesByPack.size() + " files");
+        return count;
+    }
+
+    private static void collectSingleFiles(final File candidate, final List<File> result) {
+        if (candidate.isDirectory()) {
+            final String[] names = candidate.list();
+            Arrays.sort(names);
+            for (final String name : names) {
+                CommentStore.collectSingleFiles(new File(candidate, name), result);
+            }
+        } else if (CommentStore.isCommentFile(candidate)
+                && !candidate.getName().endsWith(CommentStore.PACK_EXTENSION)) {
+            result.add(candidate);
+        }
+    }
+
+    private static String packName(final String parentId) {
+        final String safe = String.valueOf(parentId).replaceAll("[^A-Za-z0-9._-]", "_");
+        return safe + CommentStore.PACK_EXTENSION;
+    }
+
+    private static String parentId(final JsonObject rawComment) {
+        // Same lookup as BlogComment: keys are case insensitive
+        for (final Map.Entry<String, JsonElement> entry : rawComment.entrySet()) {
+            if ("parentid".equals(entry.getKey().toLowerCase()) && entry.getValue().isJsonPrimitive()) {
+                return entry.getValue().getAsString();
+            }
+        }
+        return null;
+    }
+}
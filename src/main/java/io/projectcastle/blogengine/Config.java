@@ -138,6 +138,9 @@ public class Config {
 	public String urlmapFile = "blogmap.txt";
 
 	public String urlmapNGinx = "blognginx.map";
+	// nginx map_hash sizes computed from the keys of the map
+	public boolean nginxMapHints = false;
+	public String urlmapNGinxHints = "blognginx.hash.conf";
 	public String oldImageLocation = "/blog/Images/";
 	public String bloghost = "wissel.net";
 	// RSS Properties
@@ -147,15 +150,109 @@ public class Config {
 	public String rssLink = "https://wissel.net/blog/stories.rss";
 	public String rssTitle = "wissel.net Usability - Productivity - Business - The web - Singapore and Twins";
 
+	// Extra feeds: one per category next to its page, one per series
+	public boolean categoryFeeds = false;
+	public boolean seriesFeeds = false;
+	public String seriesFeedLocation = "series/";
+
 	public int entriesOnFrontPage = 10;
 	public int entriesInRSS = 20;
 	public int entriesOnImprint = 5;
+
+	// Worker threads for reading and converting entries, 0 = one per processor
+	public int loadThreads = 0;
+	// Worker threads for rendering pages, 0 = one per processor
+	public int renderThreads = 0;
+	// Files read or written at the same time, each on a virtual thread
+	public int ioConcurrency = 64;
+
+	// Incremental build: only pages whose inputs changed get rendered again
+	public boolean incrementalBuild = true;
+	public String buildManifestFile = "blogengine.manifest.json";
+	// Hashes of written pages, so unchanged pages don't need to be read back
+	public String outputDigestFile = "blogengine.outputs.json";
+	// HTML treatment: jsoup (pretty print, page in memory), normalize or passthrough
+	public String htmlOutputMode = "jsoup";
+	// Write pages straight to disk, used unless the mode is jsoup
+	public boolean streamingOutput = true;
+
+	// Compile all templates before rendering to report broken ones early
+	public boolean precompileTemplates = false;
+
+	// Keep parsed entries and comments between runs, only changed files get parsed
+	public boolean modelSnapshot = true;
+	public String modelSnapshotFile = "blogengine.snapshot.bin";
+	// Converted Markdown by content, so only new or edited text gets converted
+	public boolean markdownCache = true;
+	public String markdownCacheFile = "blogengine.markdown.bin";
+	public int markdownCacheEntries = 100000;
+	public int markdownCacheMegabytes = 256;
+
+	// Time, CPU and allocations per build phase, as JSON and on the console
+	public boolean buildMetrics = true;
+	public String buildMetricsFile = "blogengine.metrics.json";
+
+	// Keep only the metadata of all entries, HTML and comments get loaded page by
+	// page. For archives that don't fit the heap, disables the model snapshot
+	// and the Markdown cache
+	public boolean lowMemoryBuild = false;
+	// Convert, render and write entry pages at the same time, with bounded queues
+	// between the stages. Markdown gets converted in the pipeline, not while loading
+	public boolean pipelinedBuild = false;
+
+	// Where the files kept between runs go, must be outside of the destination
+	// directory and the web root. Empty = next to the source directory
+	public String stateDirectory = "";
+
+	// Port of the preview server, started with the argument "serve"
+	public int previewPort = 8080;
 	
 	private Config() {
 		// Hide the constructor, so there can only be
 		// one instance of the class
 	}
 
+	/**
+	 * Location of files the engine keeps between runs: manifest, snapshot,
+	 * caches and metrics. They hold source paths, drafts and comment
+	 * metadata, so they go to the state directory, outside of the destination
+	 * tree
+	 * 
+	 * @param fileName name of the state file
+	 * @return the file in the state directory
+	 */
+	public File getStateFile(final String fileName) {
+		return new File(this.getStateDirectory(), fileName);
+	}
+
+	/**
+	 * Creates the state directory and moves state files still lying next to
+	 * the destination directory, where earlier versions put them, over to it.
+	 * Call once before a build
+	 */
+	public void migrateStateFiles() {
+		final File directory = this.getStateDirectory();
+		directory.mkdirs();
+		final File legacyDirectory = new File(this.destinationDirectory).getAbsoluteFile().getParentFile();
+		final String[] names = { this.buildManifestFile, this.outputDigestFile, this.modelSnapshotFile,
+				this.markdownCacheFile, this.buildMetricsFile };
+		for (final String fileName : names) {
+			final File result = new File(directory, fileName);
+			final File legacy = new File(legacyDirectory, fileName);
+			if (!result.exists() && legacy.exists() && !legacy.equals(result)) {
+				if (legacy.renameTo(result)) {
+					System.out.println("Moved " + legacy.getAbsolutePath() + " to " + result.getAbsolutePath());
+				}
+			}
+		}
+	}
+
+	private File getStateDirectory() {
+		return ((this.stateDirectory == null) || this.stateDirectory.trim().isEmpty())
+				? new File(this.sourceDirectory).getAbsoluteFile().getParentFile()
+				: new File(this.stateDirectory).getAbsoluteFile();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -0,0 +1,164 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Moves entries through a convert and a render stage at the same time, each
+ * stage with its own platform threads. Bounded queues sit in front of both
+ * stages: when a stage falls behind, the one before it waits instead of
+ * piling up converted entries in memory. The write stage is the IoExecutor
+ * the rendered pages get handed to, its permits bound the pages waiting to
+ * be written. Entries leave the pipeline in no particular order
+ *
+ * @author stw
+ *
+ */
+public class EntryPipeline {
+
+    // Tells a worker that no more entries come
+    private static final BlogEntry END = new BlogEntry();
+
+    private final int convertThreads;
+    private final int renderThreads;
+
+    /**
+     * @param convertThreads
+     *            threads of the convert stage
+     * @param renderThreads
+     *            threads of the render stage
+     */
+    public EntryPipeline(final int convertThreads, final int renderThreads) {
+        this.convertThreads = Math.max(1, convertThreads);
+        this.renderThreads = Math.max(1, renderThreads);
+    }
+
+    /**
+     * Feeds the entries in from the calling thread and returns once all of
+     * them went through both stages. An entry that fails to convert doesn't
+     * get rendered, the failure is printed. After an Error, like running out
+     * of memory, the workers skip the remaining entries, so nothing waits on
+     * a dead thread, and run throws the Error
+     *
+     * @param entries
+     *            the entries, in the order they should start
+     * @param convert
+     *            gives an entry its content
+     * @param render
+     *            renders the page of an entry
+     * @throws IOException
+     *             when interrupted
+     * @throws Error
+     *             the first Error a stage threw
+     */
+    public void run(final Iterable<BlogEntry> entries, final Consumer<BlogEntry> convert,
+            final Consumer<BlogEntry> render) throws IOException {
+        // A few entries per thread keep every stage busy
+        final BlockingQueue<BlogEntry> toConvert = new ArrayBlockingQueue<>(2 * this.convertThreads);
+        final BlockingQueue<BlogEntry> toRender = new ArrayBlockingQueue<>(4 * this.renderThreads);
+        final AtomicInteger converting = new AtomicInteger(this.convertThreads);
+        final AtomicReference<Error> failure = new AtomicReference<>();
+        final ExecutorService pool = Executors.newFixedThreadPool(this.convertThreads + this.renderThreads);
+        final List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < this.convertThreads; i++) {
+            workers.add(pool.submit(() -> {
+                try {
+                    this.work(toConvert, convert, toRender, failure);
+                } finally {
+                    // The last converter tells the renderers to stop
+                    if (converting.decrementAndGet() == 0) {
+                        this.end(toRender, this.renderThreads);
+                    }
+                }
+                return null;
+            }));
+        }
+        for (int i = 0; i < this.renderThreads; i++) {
+            workers.add(pool.submit(() -> {
+                this.work(toRender, render, null, failure);
+                return null;
+            }));
+        }
+        pool.shutdown();
+        try {
+            for (final BlogEntry be : entries) {
+                toConvert.put(be);
+            }
+            this.end(toConvert, this.convertThreads);
+            for (final Future<?> worker : workers) {
+                try {
+                    worker.get();
+                } catch (final ExecutionException e) {
+                    e.printStackTrace();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pool.shutdownNow();
+            throw new IOException(e);
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private void work(final BlockingQueue<BlogEntry> in, final Consumer<BlogEntry> stage,
+            final BlockingQueue<BlogEntry> out, final AtomicReference<Error> failure) throws InterruptedException {
+        BlogEntry be;
+        while ((be = in.take()) != EntryPipeline.END) {
+            if (failure.get() != null) {
+                continue;
+            }
+            try {
+                stage.accept(be);
+            } catch (final Exception e) {
+                e.printStackTrace();
+                continue;
+            } catch (final Error e) {
+                // Keep taking entries, a dead worker would block the others
+                failure.compareAndSet(null, e);
+                continue;
+            }
+            if (out != null) {
+                out.put(be);
+            }
+        }
+    }
+
+    private void end(final BlockingQueue<BlogEntry> queue, final int workers) throws InterruptedException {
+        for (int i = 0; i < workers; i++) {
+            queue.put(EntryPipeline.END);
+        }
+    }
+}
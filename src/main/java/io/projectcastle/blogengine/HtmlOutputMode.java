@@ -0,0 +1,51 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+/**
+ * How BlogOutput treats the HTML written to it
+ * 
+ * @author stw
+ */
+public enum HtmlOutputMode {
+    /** Full Jsoup parse and pretty print, needs the page in memory */
+    JSOUP,
+    /** Single pass whitespace normalizer, can stream */
+    NORMALIZE,
+    /** Bytes as rendered by the template */
+    PASSTHROUGH;
+
+    /**
+     * @param configValue
+     *            value from the configuration, case doesn't matter
+     * @return the matching mode, JSOUP for unknown values
+     */
+    public static HtmlOutputMode fromConfig(final String configValue) {
+        for (final HtmlOutputMode mode : HtmlOutputMode.values()) {
+            if (mode.name().equalsIgnoreCase(String.valueOf(configValue).trim())) {
+                return mode;
+            }
+        }
+        System.err.println("Unknown HTML output mode " + configValue + ", using jsoup");
+        return JSOUP;
+    }
+}
@@ -0,0 +1,257 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Single pass HTML whitespace normalizer. Runs of whitespace in text
+ * collapse to one newline (when the run contained one) or one space, which
+ * removes indentation and trailing blanks. Tags, including quoted attribute
+ * values, are passed on as they are, and so are comments and the content of
+ * pre, textarea, script and style elements. A &lt; that isn't followed by a
+ * name, / or ! is text.
+ * Works on UTF-8 bytes, all characters it looks at are ASCII
+ * 
+ * @author stw
+ */
+public class HtmlWhitespaceNormalizer extends FilterOutputStream {
+
+    private static final String[] RAW_ELEMENTS = { "pre", "textarea", "script", "style" };
+    private static final int      MAX_NAME     = 10;
+
+    private static final int TEXT     = 0;
+    private static final int TAG_OPEN = 1;
+    private static final int TAG_NAME = 2;
+    private static final int TAG      = 3;
+    private static final int RAW      = 4;
+    private static final int MARKUP   = 5;
+    private static final int COMMENT  = 6;
+
+    private static final int NO_SPACE = 0;
+    private static final int SPACE    = 1;
+    private static final int NEWLINE  = 2;
+
+    private final byte[]        chunk        = new byte[8192];
+    private int                 chunkLength  = 0;
+    private int                 state        = TEXT;
+    private int                 pendingSpace = NO_SPACE;
+    private boolean             started      = false;
+    private final StringBuilder tagName      = new StringBuilder(MAX_NAME);
+    private boolean             closingTag   = false;
+    private byte                quote        = 0;
+    private int                 dashes       = 0;
+    private String              rawElement   = null;
+    private String              rawEnd       = null;
+    private int                 rawMatch     = 0;
+
+    public HtmlWhitespaceNormalizer(final OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (this.pendingSpace == NEWLINE) {
+            this.emit('\n');
+        }
+        this.pendingSpace = NO_SPACE;
+        this.flushChunk();
+        super.close();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        this.flushChunk();
+        super.flush();
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        final int end = off + len;
+        for (int i = off; i < end; i++) {
+            this.process(b[i]);
+        }
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        this.process((byte) b);
+    }
+
+    private void process(final byte b) throws IOException {
+        switch (this.state) {
+            case TEXT:
+                if ((b == ' ') || (b == '\t') || (b == '\r') || (b == '\f')) {
+                    this.pendingSpace = Math.max(this.pendingSpace, SPACE);
+                } else if (b == '\n') {
+                    this.pendingSpace = NEWLINE;
+                } else {
+                    this.emitPendingSpace();
+                    this.emit(b);
+                    if (b == '<') {
+                        this.state = TAG_OPEN;
+                        this.tagName.setLength(0);
+                        this.closingTag = false;
+                        this.quote = 0;
+                    }
+                }
+                break;
+
+            case TAG_OPEN:
+                if (b == '/') {
+                    this.emit(b);
+                    this.closingTag = true;
+                    this.state = TAG_NAME;
+                } else if (b == '!') {
+                    this.emit(b);
+                    this.dashes = 0;
+                    this.state = MARKUP;
+                } else if (Character.isLetter(b)) {
+                    this.emit(b);
+                    this.tagName.append(Character.toLowerCase((char) b));
+                    this.state = TAG_NAME;
+                } else {
+                    // A lone < in text, e.g. a < b
+                    this.state = TEXT;
+                    this.process(b);
+                }
+                break;
+
+            case TAG_NAME:
+                this.emit(b);
+                if (Character.isLetterOrDigit(b) && (this.tagName.length() < MAX_NAME)) {
+                    this.tagName.append(Character.toLowerCase((char) b));
+                } else {
+                    this.startTag();
+                    if (b == '>') {
+                        this.endTag();
+                    }
+                }
+                break;
+
+            case TAG:
+                this.emit(b);
+                if (this.quote != 0) {
+                    if (b == this.quote) {
+                        this.quote = 0;
+                    }
+                } else if ((b == '"') || (b == '\'')) {
+                    this.quote = b;
+                } else if (b == '>') {
+                    this.endTag();
+                }
+                break;
+
+            case MARKUP:
+                // <!-- opens a comment, anything else (doctype, cdata) is a tag
+                this.emit(b);
+                if ((b == '-') && (this.dashes < 2)) {
+                    this.dashes++;
+                    if (this.dashes == 2) {
+                        this.dashes = 0;
+                        this.state = COMMENT;
+                    }
+                } else if (b == '>') {
+                    this.state = TEXT;
+                } else {
+                    this.state = TAG;
+                }
+                break;
+
+            case COMMENT:
+                this.emit(b);
+                if (b == '-') {
+                    this.dashes++;
+                } else if ((b == '>') && (this.dashes >= 2)) {
+                    this.state = TEXT;
+                } else {
+                    this.dashes = 0;
+                }
+                break;
+
+            case RAW:
+                this.emit(b);
+                final char expected = this.rawEnd.charAt(this.rawMatch);
+                if (Character.toLowerCase((char) b) == expected) {
+                    this.rawMatch++;
+                    if (this.rawMatch == this.rawEnd.length()) {
+                        // The closing tag of the raw element, back to normal
+                        this.rawElement = null;
+                        this.quote = 0;
+                        this.state = TAG;
+                    }
+                } else {
+                    this.rawMatch = (b == '<') ? 1 : 0;
+                }
+                break;
+
+            default:
+                break;
+        }
+    }
+
+    private void startTag() {
+        this.state = TAG;
+        if (!this.closingTag) {
+            final String name = this.tagName.toString();
+            for (final String raw : RAW_ELEMENTS) {
+                if (raw.equals(name)) {
+                    this.rawElement = raw;
+                }
+            }
+        }
+    }
+
+    private void endTag() {
+        if (this.rawElement != null) {
+            this.state = RAW;
+            this.rawEnd = "</" + this.rawElement;
+            this.rawMatch = 0;
+        } else {
+            this.state = TEXT;
+        }
+    }
+
+    private void emitPendingSpace() throws IOException {
+        if (this.started && (this.pendingSpace != NO_SPACE)) {
+            this.emit((this.pendingSpace == NEWLINE) ? '\n' : ' ');
+        }
+        this.pendingSpace = NO_SPACE;
+        this.started = true;
+    }
+
+    private void emit(final int b) throws IOException {
+        if (this.chunkLength == this.chunk.length) {
+            this.flushChunk();
+        }
+        this.chunk[this.chunkLength++] = (byte) b;
+    }
+
+    private void flushChunk() throws IOException {
+        if (this.chunkLength > 0) {
+            this.out.write(this.chunk, 0, this.chunkLength);
+            this.chunkLength = 0;
+        }
+    }
+}
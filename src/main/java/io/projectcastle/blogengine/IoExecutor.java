@@ -0,0 +1,109 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs blocking file reads and writes on virtual threads, so the latency of
+ * opening files on slow storage overlaps with parsing and rendering. A
+ * semaphore caps the tasks in flight: submit blocks once the limit is
+ * reached, so read content and rendered pages don't pile up faster than
+ * they get processed. Parsing and rendering stay on platform thread pools,
+ * a task hands them over with onPool and waits, which costs a virtual
+ * thread nothing. Close it when the build is done
+ *
+ * @author stw
+ *
+ */
+public class IoExecutor implements AutoCloseable {
+
+    /**
+     * Runs CPU bound work of an I/O task on a pool of platform threads
+     *
+     * @param pool
+     *            the platform threads
+     * @param task
+     *            the work
+     * @return the result of the task
+     * @throws Exception
+     *             whatever the task threw
+     */
+    public static <T> T onPool(final ExecutorService pool, final Callable<T> task) throws Exception {
+        try {
+            return pool.submit(task).get();
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private final ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+    private final Semaphore       permits;
+
+    /**
+     * @param maxInFlight
+     *            tasks running or waiting for I/O at the same time
+     */
+    public IoExecutor(final int maxInFlight) {
+        this.permits = new Semaphore(Math.max(1, maxInFlight), true);
+    }
+
+    /**
+     * Waits for the running tasks, then stops taking new ones
+     */
+    @Override
+    public void close() {
+        this.threads.close();
+    }
+
+    /**
+     * Starts a task on its own virtual thread, waits for a permit first
+     *
+     * @param task
+     *            blocking I/O, eventually handing CPU work to onPool
+     * @return the result once the task is done
+     */
+    public <T> Future<T> submit(final Callable<T> task) {
+        this.permits.acquireUninterruptibly();
+        try {
+            return this.threads.submit(() -> {
+                try {
+                    return task.call();
+                } finally {
+                    this.permits.release();
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            this.permits.release();
+            throw e;
+        }
+    }
+}
@@ -58,6 +58,14 @@ public class LinkItem implements Comparable<LinkItem>{
 		this.inverseSort = false;
 	}
 
+	// Same link marked as active, leaves the original untouched
+	public LinkItem activeCopy() {
+		LinkItem result = new LinkItem(this.name, this.place, this.sorter, this.inverseSort);
+		result.count = this.count;
+		result.active = true;
+		return result;
+	}
+
 	// Allows to reverse order e.g. for series
 	public int compareTo(LinkItem o) {
 		return (this.inverseSort) ? o.sorter.compareTo(this.sorter): this.sorter.compareTo(o.sorter);
@@ -0,0 +1,206 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Remembers converted Markdown by content: the key is a hash of the
+ * converter options and the Markdown text, so a text is converted once, no
+ * matter in which file it sits or how often that file got touched. Least
+ * recently used conversions are dropped when the cache grows beyond its
+ * limits. Safe to use from multiple threads
+ *
+ * @author stw
+ *
+ */
+public class MarkdownCache {
+
+    private static final String MAGIC   = "blogengine-markdown";
+    private static final int    VERSION = 1;
+
+    /**
+     * Reads the cache of the previous run
+     *
+     * @param source
+     *            the cache file
+     * @param maxEntries
+     *            most conversions to keep
+     * @param maxBytes
+     *            most HTML to keep, counted as UTF-8 bytes
+     * @return the cache, empty if there was none or it can't be used
+     */
+    public static MarkdownCache load(final File source, final int maxEntries, final long maxBytes) {
+        final MarkdownCache result = new MarkdownCache(maxEntries, maxBytes);
+        if (!source.exists()) {
+            return result;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(source.toPath()), 65536))) {
+            if (!MarkdownCache.MAGIC.equals(in.readUTF()) || (in.readInt() != MarkdownCache.VERSION)
+                    || !MarkdownConverter.OPTIONS_KEY.equals(in.readUTF())) {
+                System.out.println("Markdown cache is from another converter, converting everything");
+                return result;
+            }
+            final int count = in.readInt();
+            // Stored least recently used first, so the order survives
+            for (int i = 0; i < count; i++) {
+                final String key = in.readUTF();
+                final byte[] html = new byte[in.readInt()];
+                in.readFully(html);
+                result.store(key, html);
+            }
+            result.changed = false;
+        } catch (final IOException e) {
+            System.err.println("Markdown cache unreadable, converting everything: " + e.getMessage());
+            return new MarkdownCache(maxEntries, maxBytes);
+        }
+        return result;
+    }
+
+    private final int                 maxEntries;
+    private final long                maxBytes;
+    // Access ordered: iteration starts with the least recently used
+    private final Map<String, byte[]> html    = new LinkedHashMap<>(1024, 0.75f, true);
+    private long                      bytes   = 0;
+    private boolean                   changed = false;
+    private int                       hits    = 0;
+    private int                       misses  = 0;
+
+    public MarkdownCache(final int maxEntries, final long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the HTML for a Markdown text, converting it only when it isn't
+     * cached. The conversion runs outside the lock, so threads don't wait
+     * for each other
+     *
+     * @param markdown
+     *            the Markdown text
+     * @param converter
+     *            turns Markdown into HTML
+     * @return the HTML
+     */
+    public String convert(final String markdown, final Function<String, String> converter) {
+        final String key = DigestUtils.sha256Hex(MarkdownConverter.OPTIONS_KEY + "\n" + markdown);
+        synchronized (this) {
+            final byte[] cached = this.html.get(key);
+            if (cached != null) {
+                this.hits++;
+                return new String(cached, StandardCharsets.UTF_8);
+            }
+            this.misses++;
+        }
+        final String result = converter.apply(markdown);
+        synchronized (this) {
+            this.store(key, result.getBytes(StandardCharsets.UTF_8));
+        }
+        return result;
+    }
+
+    /**
+     * @return true if conversions were added or dropped since the cache was
+     *         read
+     */
+    public synchronized boolean isChanged() {
+        return this.changed;
+    }
+
+    /**
+     * @return hits and misses of this run, for the console
+     */
+    public synchronized String getStatistics() {
+        return this.hits + " cached, " + this.misses + " converted, " + this.html.size() + " kept";
+    }
+
+    /**
+     * Writes the cache, through a temp file so an interrupted run doesn't
+     * leave a broken one
+     *
+     * @param destination
+     *            the cache file
+     */
+    public synchronized void save(final File destination) {
+        final Path target = destination.toPath();
+        Path temp = null;
+        try {
+            final Path directory = target.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, "." + destination.getName(), ".tmp");
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 65536))) {
+                out.writeUTF(MarkdownCache.MAGIC);
+                out.writeInt(MarkdownCache.VERSION);
+                out.writeUTF(MarkdownConverter.OPTIONS_KEY);
+                out.writeInt(this.html.size());
+                for (final Map.Entry<String, byte[]> entry : this.html.entrySet()) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    out.write(entry.getValue());
+                }
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            this.changed = false;
+        } catch (final IOException e) {
+            e.printStackTrace();
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (final IOException e2) {
+                e2.printStackTrace();
+            }
+        }
+    }
+
+    private void store(final String key, final byte[] value) {
+        final byte[] previous = this.html.put(key, value);
+        if (previous != null) {
+            this.bytes -= previous.length;
+        }
+        this.bytes += value.length;
+        this.changed = true;
+        // Drop the least recently used ones
+        final Iterator<byte[]> eldest = this.html.values().iterator();
+        while (((this.html.size() > this.maxEntries) || (this.bytes > this.maxBytes)) && eldest.hasNext()) {
+            this.bytes -= eldest.next().length;
+            eldest.remove();
+        }
+    }
+}
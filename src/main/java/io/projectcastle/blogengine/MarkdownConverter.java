@@ -21,6 +21,8 @@
  */
 package io.projectcastle.blogengine;
 
+import java.util.ArrayDeque;
+
 import com.vladsch.flexmark.ast.Node;
 import com.vladsch.flexmark.html.HtmlRenderer;
 import com.vladsch.flexmark.parser.Parser;
@@ -35,7 +37,37 @@ public class MarkdownConverter {
 
     static final Parser PARSER = Parser.builder(OPTIONS).build();
     static final HtmlRenderer RENDERER = HtmlRenderer.builder(OPTIONS).build();
-    
+
+	/**
+	 * Identifies the conversion: flexmark options and the code fix. Change it
+	 * when either changes, so cached HTML doesn't get reused
+	 */
+	static final String OPTIONS_KEY = "flexmark-pegdown:" + Extensions.ALL + ";fixCodeHTML:2";
+
+	private static volatile MarkdownCache cache = null;
+	private static volatile BuildMetrics metrics = null;
+
+	/**
+	 * @param buildMetrics measures each conversion, null to stop measuring
+	 */
+	public static void useMetrics(BuildMetrics buildMetrics) {
+		MarkdownConverter.metrics = buildMetrics;
+	}
+
+	/**
+	 * @param markdownCache cache for converted text, null to convert every time
+	 */
+	public static void useCache(MarkdownCache markdownCache) {
+		MarkdownConverter.cache = markdownCache;
+	}
+
+	/**
+	 * @return the cache in use or null
+	 */
+	public static MarkdownCache getCache() {
+		return MarkdownConverter.cache;
+	}
+
 	public static String markdown2Html(String markdownText) {
 		Node document = PARSER.parse(markdownText);
         String result = RENDERER.render(document);
@@ -48,39 +80,85 @@ public class MarkdownConverter {
 	 * @return HTML from Markdown that renders nicely for code highlighter
 	 */
 	public static String markdown2HtmlWithCode(String mdContentCandidate) {
+		final BuildMetrics buildMetrics = MarkdownConverter.metrics;
+		if (buildMetrics == null) {
+			return MarkdownConverter.cachedMarkdown2HtmlWithCode(mdContentCandidate);
+		}
+		try (BuildMetrics.Item item = buildMetrics.item(BuildMetrics.MARKDOWN, MarkdownConverter.label(mdContentCandidate))) {
+			return MarkdownConverter.cachedMarkdown2HtmlWithCode(mdContentCandidate);
+		}
+	}
+
+	// First line of the text, to recognize slow conversions
+	private static String label(String mdContentCandidate) {
+		final int lineEnd = mdContentCandidate.indexOf('\n');
+		final String firstLine = (lineEnd > -1) ? mdContentCandidate.substring(0, lineEnd) : mdContentCandidate;
+		return (firstLine.length() > 60) ? firstLine.substring(0, 60) : firstLine;
+	}
+
+	private static String cachedMarkdown2HtmlWithCode(String mdContentCandidate) {
+		final MarkdownCache markdownCache = MarkdownConverter.cache;
+		if (markdownCache != null) {
+			return markdownCache.convert(mdContentCandidate, MarkdownConverter::convertWithCode);
+		}
+		return MarkdownConverter.convertWithCode(mdContentCandidate);
+	}
+
+	private static String convertWithCode(String mdContentCandidate) {
 		String htmlContent = MarkdownConverter.markdown2Html(mdContentCandidate);
 		return MarkdownConverter.fixCodeHTML(htmlContent);
 	}
 
+	// Code blocks as SyntaxHighlighter wants them
+	private static final String CODE_OPEN = "<pre><code class=\"language-";
+	private static final String CODE_CLOSE = "</code></pre>";
+	private static final String BRUSH_OPEN = "<pre class=\"brush: ";
+	private static final String BRUSH_CLOSE = "</pre>";
+	private static final String RSQUO = "&rsquo;";
+
 	/**
 	 * Need to fix the way code is rendered. I'm using SyntaxHighlighter, not
-	 * just pre/code. Also Flexmark converts ' into &rsquo; need to reverse that
+	 * just pre/code. Also Flexmark converts ' into &rsquo; need to reverse that.
+	 * One pass over the HTML: each pattern is searched from behind its last
+	 * match, so code or apostrophe heavy posts don't get slow. Every opening
+	 * tag gets the first closing tag after it that no earlier one took, so
+	 * nested blocks come out like they did with the old replace loop. An
+	 * opening tag without a closing one is converted on its own
 	 * @param candidate
 	 * @return the fixed html
 	 */
-	private static String fixCodeHTML(String candidate) {
-		StringBuilder result = new StringBuilder(candidate);
-		// Need to check for <pre><code class="language-
-		final String searchFor = "<pre><code class=\"language-";
-		final String searchForClose = "</code></pre>";
-		final String replaceWith = "<pre class=\"brush: ";
-		final String replaceWithClose = "</pre>";
-		final String searchFor2 = "&rsquo;";
-		final String replaceWith2 = "'";
-		
-		// Code formatting
-		while (result.indexOf(searchFor) > -1) {
-			int startPos = result.indexOf(searchFor);
-			int secondPart = result.indexOf(searchForClose, startPos);
-			result.replace(secondPart, secondPart+searchForClose.length(), replaceWithClose);
-			result.replace(startPos, startPos+searchFor.length(), replaceWith);
-		}
-		
-		// Aphostroph handling
-		while (result.indexOf(searchFor2) > -1) {
-			int startPos = result.indexOf(searchFor2);
-			result.replace(startPos, startPos+searchFor2.length(), replaceWith2);
+	static String fixCodeHTML(String candidate) {
+		final StringBuilder result = new StringBuilder(candidate.length());
+		int pos = 0;
+		int open = candidate.indexOf(CODE_OPEN);
+		int quote = candidate.indexOf(RSQUO);
+		// Closing tags taken by opening ones, in the order they appear
+		final ArrayDeque<Integer> closes = new ArrayDeque<>();
+		int closeSearch = 0;
+		while (true) {
+			final int close = closes.isEmpty() ? -1 : closes.peek().intValue();
+			if ((quote > -1) && ((open < 0) || (quote < open)) && ((close < 0) || (quote < close))) {
+				result.append(candidate, pos, quote).append('\'');
+				pos = quote + RSQUO.length();
+				quote = candidate.indexOf(RSQUO, pos);
+			} else if ((close > -1) && ((open < 0) || (close < open))) {
+				result.append(candidate, pos, close).append(BRUSH_CLOSE);
+				pos = close + CODE_CLOSE.length();
+				closes.poll();
+			} else if (open > -1) {
+				result.append(candidate, pos, open).append(BRUSH_OPEN);
+				pos = open + CODE_OPEN.length();
+				final int taken = candidate.indexOf(CODE_CLOSE, Math.max(pos, closeSearch));
+				if (taken > -1) {
+					closes.add(Integer.valueOf(taken));
+					closeSearch = taken + CODE_CLOSE.length();
+				}
+				open = candidate.indexOf(CODE_OPEN, pos);
+			} else {
+				break;
+			}
 		}
+		result.append(candidate, pos, candidate.length());
 		return result.toString();
 	}
 }
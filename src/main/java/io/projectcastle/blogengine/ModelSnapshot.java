@@ -0,0 +1,135 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputFilter;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Binary snapshot of the parsed sources: every entry with its converted
+ * HTML and every comment, with the date, size and hash of the file it came
+ * from. On the next start only changed files get parsed, the aggregates
+ * (categories, dates, series, overview pages) are built again from the
+ * entries, which takes no parsing
+ *
+ * @author stw
+ *
+ */
+public class ModelSnapshot {
+
+    private static final String MAGIC   = "blogengine-snapshot";
+    // Bump when parsing or the model classes change, older snapshots are
+    // ignored then. Changes of the Markdown conversion are caught by its
+    // options key, like in the Markdown cache
+    private static final int    VERSION = 4;
+
+    // The snapshot sits in a writable directory, so reading it must not
+    // create anything but the model: entries, comments, the cache records
+    // and the collections, dates and strings they hold. Object covers the
+    // arrays inside ArrayList and HashMap
+    private static final ObjectInputFilter MODEL_ONLY = ObjectInputFilter.Config.createFilter(
+            "io.projectcastle.blogengine.BlogEntry;io.projectcastle.blogengine.BlogComment;"
+                    + "io.projectcastle.blogengine.SourceCache$Cached;java.util.*;java.lang.String;"
+                    + "java.lang.Boolean;java.lang.Object;!*");
+
+    /**
+     * Fills the caches from a snapshot
+     *
+     * @param source
+     *            the snapshot file
+     * @param entries
+     *            cache for .blog files
+     * @param comments
+     *            cache for comment files and packs
+     * @return true if the snapshot could be used
+     */
+    public static boolean load(final File source, final SourceCache<BlogEntry> entries,
+            final SourceCache<List<BlogComment>> comments) {
+        if (!source.exists()) {
+            return false;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(Files.newInputStream(source.toPath()), 65536))) {
+            in.setObjectInputFilter(ModelSnapshot.MODEL_ONLY);
+            if (!ModelSnapshot.MAGIC.equals(in.readUTF()) || (in.readInt() != ModelSnapshot.VERSION)
+                    || !MarkdownConverter.OPTIONS_KEY.equals(in.readUTF())) {
+                System.out.println("Model snapshot is from another version or Markdown setup, parsing everything");
+                return false;
+            }
+            entries.readFrom(in);
+            comments.readFrom(in);
+            return true;
+        } catch (final Exception e) {
+            System.err.println("Model snapshot unreadable, parsing everything: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Writes the caches, through a temp file so an interrupted run doesn't
+     * leave a broken snapshot
+     *
+     * @param destination
+     *            the snapshot file
+     * @param entries
+     *            cache for .blog files
+     * @param comments
+     *            cache for comment files and packs
+     */
+    public static void save(final File destination, final SourceCache<BlogEntry> entries,
+            final SourceCache<List<BlogComment>> comments) {
+        final Path target = destination.toPath();
+        Path temp = null;
+        try {
+            final Path directory = target.toAbsolutePath().getParent();
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, "." + destination.getName(), ".tmp");
+            try (ObjectOutputStream out = new ObjectOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temp), 65536))) {
+                out.writeUTF(ModelSnapshot.MAGIC);
+                out.writeInt(ModelSnapshot.VERSION);
+                out.writeUTF(MarkdownConverter.OPTIONS_KEY);
+                entries.writeTo(out);
+                comments.writeTo(out);
+            }
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final IOException e) {
+            e.printStackTrace();
+            try {
+                if (temp != null) {
+                    Files.deleteIfExists(temp);
+                }
+            } catch (final IOException e2) {
+                e2.printStackTrace();
+            }
+        }
+    }
+}
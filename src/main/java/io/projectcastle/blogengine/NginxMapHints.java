@@ -0,0 +1,156 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Suggests map_hash_bucket_size and map_hash_max_size for the nginx URL map.
+ * It repeats what ngx_hash_init does on a 64 bit system with 64 byte cache
+ * lines: the bucket must hold the largest key, and the table needs a size
+ * where no bucket overflows
+ *
+ * @author stw
+ *
+ */
+public class NginxMapHints {
+
+    private static final int POINTER    = 8;
+    private static final int CACHE_LINE = 64;
+    private static final int MAX_BUCKET = 1024;
+
+    /**
+     * @param keys
+     *            the keys of the map, as written to the map file
+     * @return nginx configuration for the http block, with a comment
+     */
+    public static String describe(final Collection<String> keys) {
+        final int count = keys.size();
+        final long[] hashes = new long[count];
+        final int[] sizes = new int[count];
+        int longest = 0;
+        int i = 0;
+        for (final String key : keys) {
+            final byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            long hash = 0;
+            for (final byte b : bytes) {
+                // ngx_hash_key_lc, only ASCII gets lower cased
+                final int c = b & 0xff;
+                hash = (hash * 31) + (((c >= 'A') && (c <= 'Z')) ? (c | 0x20) : c);
+            }
+            hashes[i] = hash;
+            sizes[i] = NginxMapHints.POINTER + NginxMapHints.align(bytes.length + 2, NginxMapHints.POINTER);
+            longest = Math.max(longest, bytes.length);
+            i++;
+        }
+
+        // Bigger buckets allow smaller tables but cost a longer scan per
+        // lookup. Up to MAX_BUCKET the smallest bucket wins that needs at
+        // most a quarter (or 64 KB) more memory than the best one
+        final List<long[]> candidates = new ArrayList<>();
+        long leastMemory = Long.MAX_VALUE;
+        for (int candidate = NginxMapHints.CACHE_LINE; (candidate <= NginxMapHints.MAX_BUCKET)
+                || (candidates.isEmpty() && (candidate <= 65536)); candidate *= 2) {
+            if (candidate < (NginxMapHints.POINTER + NginxMapHints.POINTER
+                    + NginxMapHints.align(longest + 2, NginxMapHints.POINTER))) {
+                continue;
+            }
+            final int size = NginxMapHints.findTableSize(hashes, sizes, candidate - NginxMapHints.POINTER);
+            if (size > 0) {
+                final long needed = NginxMapHints.memory(hashes, sizes, size);
+                // bucket size, table size, memory
+                candidates.add(new long[] { candidate, size, needed });
+                leastMemory = Math.min(leastMemory, needed);
+            }
+        }
+        final long acceptable = leastMemory + Math.max(leastMemory / 4, 65536);
+        long[] chosen = null;
+        for (final long[] candidate : candidates) {
+            if ((chosen == null) && (candidate[2] <= acceptable)) {
+                chosen = candidate;
+            }
+        }
+        final long bucketSize = chosen[0];
+        final long tableSize = chosen[1];
+        final long memory = chosen[2];
+
+        final StringBuilder result = new StringBuilder();
+        result.append("# ").append(count).append(" keys, longest ").append(longest).append(" bytes, about ")
+                .append((memory + 1023) / 1024).append(" KB of hash\n");
+        result.append("map_hash_bucket_size ").append(bucketSize).append(";\n");
+        result.append("map_hash_max_size ").append(tableSize).append(";\n");
+        return result.toString();
+    }
+
+    private static int align(final int value, final int alignment) {
+        return (value + (alignment - 1)) & ~(alignment - 1);
+    }
+
+    /**
+     * nginx takes the first table size from its start value up to
+     * map_hash_max_size where all buckets fit, so any size that fits is a
+     * valid maximum. Sizes grow by 1/16 per step to find one quickly
+     *
+     * @return a table size where all buckets fit, -1 if there is none up to
+     *         64 slots per key
+     */
+    private static int findTableSize(final long[] hashes, final int[] sizes, final int bucketSize) {
+        final int start = Math.max(1, hashes.length / (bucketSize / (2 * NginxMapHints.POINTER)));
+        final long limit = Math.max(1024L, hashes.length * 64L);
+        for (long size = start; size <= limit; size += Math.max(1, size / 16)) {
+            if (NginxMapHints.fits(hashes, sizes, bucketSize, (int) size)) {
+                return (int) size;
+            }
+        }
+        return -1;
+    }
+
+    // Bucket pointers plus the buckets, each aligned to a cache line
+    private static long memory(final long[] hashes, final int[] sizes, final int tableSize) {
+        final int[] used = new int[tableSize];
+        for (int n = 0; n < hashes.length; n++) {
+            used[(int) Long.remainderUnsigned(hashes[n], tableSize)] += sizes[n];
+        }
+        long result = (long) tableSize * NginxMapHints.POINTER;
+        for (final int bucket : used) {
+            if (bucket > 0) {
+                result += NginxMapHints.align(bucket + NginxMapHints.POINTER, NginxMapHints.CACHE_LINE);
+            }
+        }
+        return result;
+    }
+
+    private static boolean fits(final long[] hashes, final int[] sizes, final int bucketSize, final int tableSize) {
+        final int[] used = new int[tableSize];
+        for (int n = 0; n < hashes.length; n++) {
+            final int bucket = (int) Long.remainderUnsigned(hashes[n], tableSize);
+            used[bucket] += sizes[n];
+            if (used[bucket] > bucketSize) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
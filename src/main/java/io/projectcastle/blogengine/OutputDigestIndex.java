@@ -0,0 +1,160 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Hash and length of every file written to the destination directory, kept
+ * between runs. BlogOutput uses it to detect unchanged pages without
+ * reading the existing file. An entry only counts when length and
+ * modification date of the file on disk still match, otherwise the file
+ * was touched outside the engine and gets compared the old way. Only files
+ * written, checked or kept in a run are saved, so removed pages drop out
+ *
+ * @author stw
+ *
+ */
+public class OutputDigestIndex {
+
+    /**
+     * What we wrote to one output file
+     */
+    static class OutputState {
+        String hash;
+        long   length;
+        long   lastModified;
+
+        OutputState(final String hash, final long length, final long lastModified) {
+            this.hash = hash;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+    }
+
+    /**
+     * Loads the index of the previous run
+     *
+     * @param source
+     *            the index file
+     * @return the index, empty if there was none
+     */
+    public static OutputDigestIndex load(final File source) {
+        OutputDigestIndex result = null;
+        if (source.exists()) {
+            try (Reader in = Files.newBufferedReader(source.toPath(), StandardCharsets.UTF_8)) {
+                final Gson gson = new GsonBuilder().create();
+                result = gson.fromJson(in, OutputDigestIndex.class);
+            } catch (final Exception e) {
+                System.err.println("Output index unreadable, comparing files instead: " + e.getMessage());
+            }
+        }
+        return (result == null) ? new OutputDigestIndex() : result;
+    }
+
+    // State of the previous run, as loaded from disk
+    private Map<String, OutputState> outputs = new HashMap<>();
+
+    // State of the current run, written at the end
+    private final transient Map<String, OutputState> currentOutputs = new ConcurrentHashMap<>();
+
+    /**
+     * Checks a new payload against the recorded state of the target file
+     *
+     * @param targetFile
+     *            the output file
+     * @param hash
+     *            hash of the new content
+     * @param length
+     *            length of the new content
+     * @return TRUE if unchanged, FALSE if changed, null if the index can't
+     *         tell (no entry, or the file changed behind our back)
+     */
+    public Boolean isUnchanged(final File targetFile, final String hash, final long length) {
+        final String path = targetFile.getAbsolutePath();
+        final OutputState state = this.currentOutputs.getOrDefault(path, this.outputs.get(path));
+        if ((state == null) || !targetFile.exists() || (targetFile.length() != state.length)
+                || (targetFile.lastModified() != state.lastModified)) {
+            return null;
+        }
+        final boolean unchanged = (state.length == length) && state.hash.equals(hash);
+        if (unchanged) {
+            this.currentOutputs.put(path, state);
+        }
+        return Boolean.valueOf(unchanged);
+    }
+
+    /**
+     * Keeps the recorded state of an output file that wasn't rendered this
+     * run, because its inputs didn't change
+     *
+     * @param targetFile
+     *            the output file
+     */
+    public void keep(final File targetFile) {
+        final String path = targetFile.getAbsolutePath();
+        final OutputState state = this.outputs.get(path);
+        if (state != null) {
+            this.currentOutputs.putIfAbsent(path, state);
+        }
+    }
+
+    /**
+     * Remembers the current content of an output file
+     *
+     * @param targetFile
+     *            the output file, must exist
+     * @param hash
+     *            hash of its content
+     */
+    public void record(final File targetFile, final String hash) {
+        this.currentOutputs.put(targetFile.getAbsolutePath(),
+                new OutputState(hash, targetFile.length(), targetFile.lastModified()));
+    }
+
+    /**
+     * Saves the index for the next run
+     *
+     * @param destination
+     *            the index file
+     */
+    public void save(final File destination) {
+        this.outputs = new HashMap<>(this.currentOutputs);
+        try (Writer out = Files.newBufferedWriter(destination.toPath(), StandardCharsets.UTF_8)) {
+            final Gson gson = new GsonBuilder().disableHtmlEscaping().create();
+            gson.toJson(this, out);
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Navigation state of a single page: category, date and series lists with
+ * the items of the current page marked active. It is handed to Mustache as
+ * an additional scope, so the shared LinkItems never get modified and pages
+ * can be rendered in parallel
+ * 
+ * @author stw
+ */
+public class PageNavigation {
+
+    Collection<LinkItem> allCategories;
+    Collection<LinkItem> allDateCategories;
+    Collection<LinkItem> seriesMember;
+
+    /**
+     * Copies a navigation list, replacing the active items with marked
+     * copies. The other items are shared, they are never modified
+     * 
+     * @param source
+     *            the shared list
+     * @param active
+     *            items to mark as active
+     * @return list for one page
+     */
+    static Collection<LinkItem> markActive(final Collection<LinkItem> source, final Set<LinkItem> active) {
+        if ((source == null) || active.isEmpty()) {
+            return source;
+        }
+        final List<LinkItem> result = new ArrayList<>(source.size());
+        for (final LinkItem li : source) {
+            result.add(active.contains(li) ? li.activeCopy() : li);
+        }
+        return result;
+    }
+}
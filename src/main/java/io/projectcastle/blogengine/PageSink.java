@@ -0,0 +1,48 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.util.List;
+
+import com.github.mustachejava.Mustache;
+
+/**
+ * Receives every page BlogEngine produces. The build writes the pages to
+ * disk, the preview server keeps them and renders on request
+ *
+ * @author stw
+ *
+ */
+public interface PageSink {
+
+    /**
+     * @param location
+     *            file location of the page
+     * @param inputs
+     *            everything that determines the content of the page
+     * @param mustache
+     *            the compiled template
+     * @param scopes
+     *            objects to render, later scopes take precedence
+     */
+    void page(String location, List<String> inputs, Mustache mustache, Object... scopes);
+}
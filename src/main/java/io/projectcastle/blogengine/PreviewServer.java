@@ -0,0 +1,284 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.net.InetSocketAddress;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.github.mustachejava.Mustache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Live preview for writing: keeps the blog in memory, watches the source and
+ * template directories and renders pages when the browser asks for them.
+ * Changed files are parsed again, everything else comes from the caches. A
+ * rendered page is kept until one of its inputs changes. Nothing gets
+ * written to the destination directory, files that aren't pages (images,
+ * downloads) are served from there
+ *
+ * @author stw
+ *
+ */
+public class PreviewServer {
+
+    /**
+     * A page as collected from BlogEngine, ready to render
+     */
+    private static class Page {
+        final String   digest;
+        final Mustache mustache;
+        final Object[] scopes;
+
+        Page(final String digest, final Mustache mustache, final Object[] scopes) {
+            this.digest = digest;
+            this.mustache = mustache;
+            this.scopes = scopes;
+        }
+    }
+
+    /**
+     * Rendered content and the inputs it was rendered from
+     */
+    private static class RenderedPage {
+        final String digest;
+        final byte[] content;
+
+        RenderedPage(final String digest, final byte[] content) {
+            this.digest = digest;
+            this.content = content;
+        }
+    }
+
+    private final Config                         config;
+    private final SourceCache<BlogEntry>         entryCache   = new SourceCache<>();
+    private final SourceCache<List<BlogComment>> commentCache = new SourceCache<>();
+    private final Map<String, RenderedPage>      rendered     = new HashMap<>();
+    private final Map<WatchKey, Path>            watched      = new HashMap<>();
+    private Map<String, Page>                    pages        = new HashMap<>();
+    private BuildManifest                        manifest     = new BuildManifest();
+
+    public PreviewServer(final Config config) {
+        this.config = config;
+    }
+
+    /**
+     * Loads the blog, starts the HTTP server and watches for changes until
+     * the process gets stopped
+     *
+     * @throws IOException
+     */
+    public void start() throws IOException {
+        final WatchService watcher = FileSystems.getDefault().newWatchService();
+        this.register(watcher, new File(this.config.sourceDirectory).toPath());
+        this.register(watcher, new File(this.config.templateDirectory).toPath());
+        this.register(watcher, new File(new File(this.config.sourceDirectory).getPath() + this.config.commentDirectory)
+                .toPath());
+        this.reload();
+
+        final HttpServer server = HttpServer.create(new InetSocketAddress("localhost", this.config.previewPort), 0);
+        server.createContext("/", this::handle);
+        server.start();
+        System.out.println("\nPreview running on http://localhost:" + this.config.previewPort
+                + this.config.webBlogLocation);
+
+        try {
+            this.watch(watcher);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            server.stop(0);
+            watcher.close();
+        }
+    }
+
+    /**
+     * Loads the blog again, unchanged files come from the caches
+     *
+     * @throws IOException
+     */
+    synchronized void reload() throws IOException {
+        final long start = System.nanoTime();
+        final Map<String, Page> collected = new HashMap<>();
+        final BuildManifest next = this.manifest.carryOver();
+        try (final BlogEngine engine = new BlogEngine(this.config)) {
+            engine.useSourceCaches(this.entryCache, this.commentCache);
+            engine.loadBlogFromDisk();
+            engine.collectPages((location, inputs, mustache, scopes) -> collected.put(location,
+                    new Page(DigestUtils.sha256Hex(String.join("\n", inputs)), mustache, scopes)), next);
+        }
+        this.manifest = next;
+        this.pages = collected;
+        this.rendered.keySet().retainAll(collected.keySet());
+        this.entryCache.prune();
+        this.commentCache.prune();
+        System.out.println("Preview updated in " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+                + " ms, " + collected.size() + " pages");
+    }
+
+    private void handle(final HttpExchange exchange) throws IOException {
+        String relative = exchange.getRequestURI().getPath();
+        if (relative.startsWith(this.config.webBlogLocation)) {
+            relative = relative.substring(this.config.webBlogLocation.length());
+        } else if (relative.startsWith("/")) {
+            relative = relative.substring(1);
+        }
+        if (relative.isEmpty() || relative.endsWith("/")) {
+            relative += this.config.indexFileName;
+        }
+
+        int status = 200;
+        String contentType = "text/html";
+        byte[] content = this.renderPage(this.config.destinationDirectory + relative);
+        if (content == null) {
+            final File staticFile = this.staticFile(relative);
+            if (staticFile != null) {
+                content = Files.readAllBytes(staticFile.toPath());
+                contentType = Files.probeContentType(staticFile.toPath());
+            } else {
+                status = 404;
+                content = this.renderPage(this.config.destinationDirectory + this.config.errorFileName);
+                if (content == null) {
+                    content = "Not found".getBytes();
+                }
+            }
+        }
+
+        exchange.getResponseHeaders().set("Content-Type",
+                (contentType == null) ? "application/octet-stream" : contentType);
+        exchange.getResponseHeaders().set("Cache-Control", "no-store");
+        exchange.sendResponseHeaders(status, content.length);
+        final OutputStream out = exchange.getResponseBody();
+        out.write(content);
+        out.close();
+    }
+
+    /**
+     * @param location
+     *            file location the build would write the page to
+     * @return the page or null if there is no such page
+     */
+    private synchronized byte[] renderPage(final String location) {
+        final Page page = this.pages.get(location);
+        if (page == null) {
+            return null;
+        }
+        final RenderedPage cached = this.rendered.get(location);
+        if ((cached != null) && cached.digest.equals(page.digest)) {
+            return cached.content;
+        }
+        final long start = System.nanoTime();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final PrintWriter pw = new PrintWriter(out);
+        page.mustache.execute(pw, page.scopes);
+        pw.flush();
+        final byte[] result = out.toByteArray();
+        this.rendered.put(location, new RenderedPage(page.digest, result));
+        System.out.println("Rendered " + location + " in "
+                + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+        return result;
+    }
+
+    /**
+     * @param relative
+     *            path below the destination directory
+     * @return the file or null when it doesn't exist or is outside of the
+     *         destination directory
+     */
+    private File staticFile(final String relative) throws IOException {
+        final File destination = new File(this.config.destinationDirectory).getCanonicalFile();
+        final File candidate = new File(destination, relative).getCanonicalFile();
+        if (!candidate.isFile() || !candidate.toPath().startsWith(destination.toPath())) {
+            return null;
+        }
+        return candidate;
+    }
+
+    private void watch(final WatchService watcher) throws InterruptedException, IOException {
+        while (true) {
+            WatchKey key = watcher.take();
+            while (key != null) {
+                this.processEvents(watcher, key);
+                // Editors save in several steps, wait until it's quiet
+                key = watcher.poll(50, TimeUnit.MILLISECONDS);
+            }
+            try {
+                this.reload();
+            } catch (final RuntimeException e) {
+                // Keep the previous state, e.g. while a template is half typed
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void processEvents(final WatchService watcher, final WatchKey key) throws IOException {
+        final Path dir = this.watched.get(key);
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            if ((dir != null) && (event.kind() == StandardWatchEventKinds.ENTRY_CREATE)) {
+                final Path child = dir.resolve((Path) event.context());
+                if (Files.isDirectory(child)) {
+                    this.register(watcher, child);
+                }
+            }
+        }
+        if (!key.reset()) {
+            this.watched.remove(key);
+        }
+    }
+
+    private void register(final WatchService watcher, final Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        final Set<Path> known = new HashSet<>(this.watched.values());
+        try (Stream<Path> dirs = Files.walk(root)) {
+            for (final Path dir : (Iterable<Path>) dirs.filter(Files::isDirectory)::iterator) {
+                final Path normalized = dir.toAbsolutePath().normalize();
+                if (known.add(normalized)) {
+                    this.watched.put(normalized.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                            StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY),
+                            normalized);
+                }
+            }
+        }
+    }
+}
@@ -22,134 +22,120 @@
 package io.projectcastle.blogengine;
 
 import java.io.OutputStream;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
 import java.util.Date;
-import java.util.GregorianCalendar;
-import java.util.Locale;
 
-import javax.xml.stream.XMLEventFactory;
-import javax.xml.stream.XMLEventWriter;
 import javax.xml.stream.XMLOutputFactory;
 import javax.xml.stream.XMLStreamException;
-import javax.xml.stream.events.Characters;
-import javax.xml.stream.events.EndElement;
-import javax.xml.stream.events.StartDocument;
-import javax.xml.stream.events.StartElement;
-import javax.xml.stream.events.XMLEvent;
+import javax.xml.stream.XMLStreamWriter;
 
 /**
+ * Writes an RSS 2.0 feed straight to a stream. The output factory is looked
+ * up once, every feed gets its own stream writer, so feeds can be written
+ * in parallel
+ *
  * @author stw
  *
  */
 public class RSSFeedWriter {
 
+  private static final XMLOutputFactory OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
   private final BlogIndex blogindex;
   private final Config config;
+  private final String title;
+  private final String link;
 
   public RSSFeedWriter(Config config, BlogIndex blogindex) {
+          this(config, blogindex, config.rssTitle, config.rssLink);
+  }
+
+  /**
+   * Feed for a part of the blog, e.g. a category or a series
+   *
+   * @param config the configuration
+   * @param blogindex the entries of the feed
+   * @param title title of the channel
+   * @param link link of the channel
+   */
+  public RSSFeedWriter(Config config, BlogIndex blogindex, String title, String link) {
           this.blogindex = blogindex;
           this.config = config;
+          this.title = title;
+          this.link = link;
   }
 
   public void write(final OutputStream out) throws Exception {
 
-          // create a XMLOutputFactory
-          XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
-
-          // create XMLEventWriter
-          XMLEventWriter eventWriter = outputFactory
-                          .createXMLEventWriter(out);
-
-          // create a EventFactory
-
-          XMLEventFactory eventFactory = XMLEventFactory.newInstance();
-          XMLEvent end = eventFactory.createDTD("\n");
-
-          // create and write Start Tag
-
-          StartDocument startDocument = eventFactory.createStartDocument();
-
-          eventWriter.add(startDocument);
+          final XMLStreamWriter writer;
+          synchronized (OUTPUT_FACTORY) {
+                  writer = OUTPUT_FACTORY.createXMLStreamWriter(out, "UTF-8");
+          }
 
-          // create open tag
-          eventWriter.add(end);
+          writer.writeStartDocument("UTF-8", "1.0");
+          writer.writeCharacters("\n");
 
-          StartElement rssStart = eventFactory.createStartElement("", "", "rss");
-          eventWriter.add(rssStart);
-          eventWriter.add(eventFactory.createAttribute("version", "2.0"));
-          eventWriter.add(end);
+          writer.writeStartElement("rss");
+          writer.writeAttribute("version", "2.0");
+          writer.writeCharacters("\n");
 
-          eventWriter.add(eventFactory.createStartElement("", "", "channel"));
-          eventWriter.add(end);
+          writer.writeStartElement("channel");
+          writer.writeCharacters("\n");
 
           // Write the different nodes
 
-          createNode(eventWriter, "title", this.config.rssTitle);
+          createNode(writer, "title", this.title);
 
-          createNode(eventWriter, "link", this.config.rssLink);
+          createNode(writer, "link", this.link);
 
-          createNode(eventWriter, "description", this.config.rssDescription);
+          createNode(writer, "description", this.config.rssDescription);
 
-          createNode(eventWriter, "language", this.config.language);
+          createNode(writer, "language", this.config.language);
 
-          createNode(eventWriter, "copyright", this.config.copyRight);
+          createNode(writer, "copyright", this.config.copyRight);
 
-          createNode(eventWriter, "pubdate", this.getCurrentDateForFeed());
+          createNode(writer, "pubdate", this.getCurrentDateForFeed());
 
           for (BlogEntry entry : this.blogindex.topArticles) {
-                  eventWriter.add(eventFactory.createStartElement("", "", "item"));
-                  eventWriter.add(end);
-                  createNode(eventWriter, "title", entry.getTitle());
-                  createNode(eventWriter, "description", entry.getMainBody());
-                  createNode(eventWriter, "link", entry.getEntryUrl());
-                  createNode(eventWriter, "author", entry.getAuthor());
-                  createNode(eventWriter, "guid", entry.getUNID());
-                  createNode(eventWriter, "pubDate", entry.getPublishDateString());
-                  eventWriter.add(end);
-                  eventWriter.add(eventFactory.createEndElement("", "", "item"));
-                  eventWriter.add(end);
+                  writer.writeStartElement("item");
+                  writer.writeCharacters("\n");
+                  createNode(writer, "title", entry.getTitle());
+                  createNode(writer, "description", entry.getMainBody());
+                  createNode(writer, "link", entry.getEntryUrl());
+                  createNode(writer, "author", entry.getAuthor());
+                  createNode(writer, "guid", entry.getUNID());
+                  createNode(writer, "pubDate", entry.getPublishDateString());
+                  writer.writeCharacters("\n");
+                  writer.writeEndElement();
+                  writer.writeCharacters("\n");
 
           }
 
-          eventWriter.add(end);
-          eventWriter.add(eventFactory.createEndElement("", "", "channel"));
-          eventWriter.add(end);
-          eventWriter.add(eventFactory.createEndElement("", "", "rss"));
+          writer.writeCharacters("\n");
+          // channel
+          writer.writeEndElement();
+          writer.writeCharacters("\n");
+          // rss
+          writer.writeEndElement();
 
-          eventWriter.add(end);
+          writer.writeCharacters("\n");
 
-          eventWriter.add(eventFactory.createEndDocument());
+          writer.writeEndDocument();
 
-          eventWriter.close();
+          writer.close();
   }
 
-  private void createNode(XMLEventWriter eventWriter, String name,
+  private void createNode(XMLStreamWriter writer, String name,
 
   String value) throws XMLStreamException {
-          XMLEventFactory eventFactory = XMLEventFactory.newInstance();
-          XMLEvent end = eventFactory.createDTD("\n");
-          XMLEvent tab = eventFactory.createDTD("\t");
-          // create Start node
-          StartElement sElement = eventFactory.createStartElement("", "", name);
-          eventWriter.add(tab);
-          eventWriter.add(sElement);
-          // create Content
-          Characters characters = eventFactory.createCharacters(value);
-          eventWriter.add(characters);
-          // create End node
-          EndElement eElement = eventFactory.createEndElement("", "", name);
-          eventWriter.add(eElement);
-          eventWriter.add(end);
+          writer.writeCharacters("\t");
+          writer.writeStartElement(name);
+          writer.writeCharacters(value);
+          writer.writeEndElement();
+          writer.writeCharacters("\n");
   }
   
   private String getCurrentDateForFeed() {
-    Calendar cal = new GregorianCalendar();
-    Date creationDate = cal.getTime();
-    SimpleDateFormat date_format = new SimpleDateFormat(
-                    "EEE', 'dd' 'MMM' 'yyyy' 'HH:mm:ss' 'Z", Locale.US);
-    String pubdate = date_format.format(creationDate);
-    return pubdate;
+    return BlogDates.format(new Date(), BlogDates.RSS_DATE);
   }
   
 }
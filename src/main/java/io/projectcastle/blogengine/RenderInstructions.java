@@ -21,7 +21,6 @@
  */
 package io.projectcastle.blogengine;
 
-import java.io.File;
 import java.util.TreeMap;
 import java.util.TreeSet;
 
@@ -70,14 +69,29 @@ public class RenderInstructions {
         ri.add(be);
     }
 
+    /**
+     * @return number of entries listed on the page, across all categories,
+     *         a measure of the work to render it
+     */
+    public int getEntryCount() {
+        int result = (this.members == null) ? 0 : this.members.size();
+        if (this.categories != null) {
+            for (RenderInstructions ri : this.categories.values()) {
+                result += ri.getEntryCount();
+            }
+        }
+        return result;
+    }
+
     /**
      * We check if there is a special template with the
      * keyname in it
      * 
+     * @param templates the registry that knows which templates exist
      * @param theKey
      * @return a template name
      */
-    public String getFinalTemplateName(String dirLocation, String theKey) {
+    public String getFinalTemplateName(TemplateRegistry templates, String theKey) {
         int dotPosition = this.TemplateName.lastIndexOf(".");
         StringBuilder b = new StringBuilder();
 
@@ -86,13 +100,13 @@ public class RenderInstructions {
         b.append(theKey);
         b.append(this.TemplateName.substring(dotPosition));
         String result = b.toString();
-        File specialTemplate = new File(dirLocation + result);
+        boolean specialTemplate = templates.exists(result);
 
-        if (specialTemplate.exists()) {
+        if (specialTemplate) {
             System.out.println(result);
         }
 
-        return (specialTemplate.exists() ? result : this.TemplateName);
+        return (specialTemplate ? result : this.TemplateName);
 
     }
 }
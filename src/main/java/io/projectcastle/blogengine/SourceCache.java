@@ -0,0 +1,145 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Keeps parsed source files in memory, keyed by path. A file is parsed again
+ * when its content hash changed; the file is only read when modification
+ * date or size differ, and then only once for hash and parser. Safe to use
+ * from multiple threads
+ *
+ * @author stw
+ *
+ * @param <T>
+ *            what a source file turns into
+ */
+public class SourceCache<T> {
+
+    private static class Cached<T> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final long   lastModified;
+        final long   length;
+        final String hash;
+        // BlogEntry or a list of comments, both serializable
+        @SuppressWarnings("serial")
+        final T      value;
+
+        Cached(final long lastModified, final long length, final String hash, final T value) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+            this.value = value;
+        }
+    }
+
+    private final Map<String, Cached<T>> cache   = new ConcurrentHashMap<>();
+    private volatile boolean             changed = false;
+
+    /**
+     * Reading and parsing happen outside of the map, a loader that blocks
+     * doesn't hold a lock of it
+     *
+     * @param source
+     *            the file
+     * @param loader
+     *            parses the content of the file, called when the file is new
+     *            or changed
+     * @return the parsed file
+     * @throws IOException
+     *             when the file can't be read
+     */
+    public T get(final File source, final BiFunction<File, byte[], T> loader) throws IOException {
+        final String path = source.getAbsolutePath();
+        final long lastModified = source.lastModified();
+        final long length = source.length();
+        final Cached<T> previous = this.cache.get(path);
+        if ((previous != null) && (previous.lastModified == lastModified) && (previous.length == length)) {
+            return previous.value;
+        }
+        final byte[] content = java.nio.file.Files.readAllBytes(source.toPath());
+        final String hash = DigestUtils.sha256Hex(content);
+        // Touched, but the same content, e.g. after a checkout
+        final T value = ((previous != null) && hash.equals(previous.hash)) ? previous.value
+                : loader.apply(source, content);
+        final Cached<T> loaded = new Cached<>(lastModified, length, hash, value);
+        final boolean published = (previous == null) ? (this.cache.putIfAbsent(path, loaded) == null)
+                : this.cache.replace(path, previous, loaded);
+        if (!published) {
+            // Another thread loaded the file at the same time
+            return this.cache.get(path).value;
+        }
+        this.changed = true;
+        return value;
+    }
+
+    /**
+     * @return true if files were parsed or forgotten since the cache was
+     *         created or read
+     */
+    public boolean isChanged() {
+        return this.changed;
+    }
+
+    /**
+     * Forgets files that don't exist anymore
+     */
+    public void prune() {
+        if (this.cache.keySet().removeIf(path -> !new File(path).exists())) {
+            this.changed = true;
+        }
+    }
+
+    /**
+     * Reads entries written by writeTo
+     *
+     * @param in
+     *            the stream
+     * @throws IOException
+     * @throws ClassNotFoundException
+     */
+    @SuppressWarnings("unchecked")
+    void readFrom(final ObjectInputStream in) throws IOException, ClassNotFoundException {
+        this.cache.putAll((Map<String, Cached<T>>) in.readObject());
+    }
+
+    /**
+     * @param out
+     *            the stream
+     * @throws IOException
+     */
+    void writeTo(final ObjectOutputStream out) throws IOException {
+        out.writeObject(new HashMap<>(this.cache));
+    }
+}
@@ -0,0 +1,214 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+
+import com.google.common.io.Files;
+
+/**
+ * Writes a page straight into a temp file next to its target, hashing the
+ * bytes on the way. On commit the temp file replaces the target with an
+ * atomic rename, or gets dropped when the content didn't change. Nothing of
+ * the page is kept on the heap
+ *
+ * @author stw
+ *
+ */
+class StreamingFileOutput extends OutputStream {
+
+    private static final int BUFFER_SIZE = 65536;
+
+    // Temp files are created rw-------, a new page must be readable by the
+    // web server
+    private static final Set<PosixFilePermission> PAGE_PERMISSIONS = PosixFilePermissions.fromString("rw-r--r--");
+
+    /**
+     * Deletes temp files a killed run left in the destination tree
+     *
+     * @param destination
+     *            the destination directory
+     */
+    static void removeLeftovers(final File destination) {
+        if (!destination.isDirectory()) {
+            return;
+        }
+        try (Stream<Path> files = java.nio.file.Files.walk(destination.toPath())) {
+            files.filter(StreamingFileOutput::isTempFile).forEach(temp -> {
+                try {
+                    java.nio.file.Files.deleteIfExists(temp);
+                    System.out.println("Removed leftover " + temp);
+                } catch (final IOException e) {
+                    e.printStackTrace();
+                }
+            });
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static boolean isTempFile(final Path candidate) {
+        final String name = candidate.getFileName().toString();
+        return name.startsWith(".") && name.endsWith(".tmp") && java.nio.file.Files.isRegularFile(candidate);
+    }
+
+    private final File          targetFile;
+    private final MessageDigest digest = DigestUtils.getSha256Digest();
+    private Path                tempFile;
+    private OutputStream        out    = null;
+    private long                length = 0;
+
+    StreamingFileOutput(final File targetFile) {
+        this.targetFile = targetFile;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.ensureOpen();
+        this.out.close();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.out != null) {
+            this.out.flush();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        this.ensureOpen();
+        this.digest.update(b, off, len);
+        this.out.write(b, off, len);
+        this.length += len;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        this.ensureOpen();
+        this.digest.update((byte) b);
+        this.out.write(b);
+        this.length++;
+    }
+
+    /**
+     * Moves the written content into place if it differs from the existing
+     * file. Call after close
+     *
+     * @param digestIndex
+     *            hashes of the previous run, can be null
+     * @return true if the target file was replaced
+     * @throws IOException
+     */
+    boolean commit(final OutputDigestIndex digestIndex) throws IOException {
+        final String hash = Hex.encodeHexString(this.digest.digest());
+        boolean saveThis = true;
+        if (this.targetFile.isDirectory()) {
+            System.err.println("Directory encountered!" + this.targetFile.getPath());
+            saveThis = false;
+        } else if (this.targetFile.exists()) {
+            final Boolean unchanged = (digestIndex == null) ? null
+                    : digestIndex.isUnchanged(this.targetFile, hash, this.length);
+            if (unchanged != null) {
+                saveThis = !unchanged.booleanValue();
+            } else {
+                // Index missing or stale, compare both files chunk by chunk
+                saveThis = (this.targetFile.length() != this.length)
+                        || !Files.asByteSource(this.targetFile).contentEquals(Files.asByteSource(this.tempFile.toFile()));
+                if (!saveThis && (digestIndex != null)) {
+                    digestIndex.record(this.targetFile, hash);
+                }
+            }
+        }
+
+        if (!saveThis) {
+            java.nio.file.Files.delete(this.tempFile);
+            return false;
+        }
+
+        this.applyPermissions();
+        try {
+            java.nio.file.Files.move(this.tempFile, this.targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            java.nio.file.Files.move(this.tempFile, this.targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        if (digestIndex != null) {
+            digestIndex.record(this.targetFile, hash);
+        }
+        return true;
+    }
+
+    /**
+     * Removes the temp file, e.g. after a failed render
+     */
+    void discard() {
+        try {
+            this.close();
+            java.nio.file.Files.deleteIfExists(this.tempFile);
+        } catch (final IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // The page keeps the permissions of the file it replaces
+    private void applyPermissions() throws IOException {
+        final PosixFileAttributeView view = java.nio.file.Files.getFileAttributeView(this.tempFile,
+                PosixFileAttributeView.class);
+        if (view == null) {
+            return;
+        }
+        final Path target = this.targetFile.toPath();
+        view.setPermissions(java.nio.file.Files.exists(target) ? java.nio.file.Files.getPosixFilePermissions(target)
+                : StreamingFileOutput.PAGE_PERMISSIONS);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (this.out == null) {
+            // Ensure the directory structure exists
+            Files.createParentDirs(this.targetFile);
+            this.tempFile = java.nio.file.Files.createTempFile(this.targetFile.getAbsoluteFile().getParentFile().toPath(),
+                    "." + this.targetFile.getName(), ".tmp");
+            final FileChannel channel = FileChannel.open(this.tempFile, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.out = new BufferedOutputStream(Channels.newOutputStream(channel), StreamingFileOutput.BUFFER_SIZE);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.github.mustachejava.DefaultMustacheFactory;
+import com.github.mustachejava.Mustache;
+import com.github.mustachejava.MustacheFactory;
+
+/**
+ * Compiles every template once per run and remembers which templates exist,
+ * so the render loop never parses a template or probes the disk again. Safe
+ * to use from multiple threads
+ *
+ * @author stw
+ *
+ */
+public class TemplateRegistry {
+
+    private final File                  templateDirectory;
+    private final Map<String, Mustache> compiled = new ConcurrentHashMap<>();
+    private final Map<String, Boolean>  existing = new ConcurrentHashMap<>();
+    private MustacheFactory             factory  = null;
+
+    public TemplateRegistry(final String templateDirectory) {
+        this.templateDirectory = new File(templateDirectory);
+    }
+
+    /**
+     * Checks once if a template file exists
+     *
+     * @param templateName
+     *            name relative to the template directory
+     * @return true if there is such a template
+     */
+    public boolean exists(final String templateName) {
+        return this.existing.computeIfAbsent(templateName,
+                name -> new File(this.templateDirectory, name).exists());
+    }
+
+    /**
+     * @param templateName
+     *            name relative to the template directory
+     * @return the compiled template
+     */
+    public Mustache get(final String templateName) {
+        return this.compiled.computeIfAbsent(templateName, name -> this.getFactory().compile(name));
+    }
+
+    /**
+     * Compiles all templates in the template directory, so broken templates
+     * show up before anything gets rendered
+     *
+     * @return number of templates that failed to compile
+     */
+    public int precompile() {
+        int failed = 0;
+        final String[] names = this.templateDirectory.list();
+        if (names == null) {
+            System.err.println(this.templateDirectory.getAbsolutePath() + " doesn't exist");
+            return 1;
+        }
+        for (final String name : names) {
+            if (name.endsWith(".mustache")) {
+                try {
+                    this.get(name);
+                } catch (final Exception e) {
+                    System.err.println("Template " + name + " failed: " + e.getMessage());
+                    failed++;
+                }
+            }
+        }
+        return failed;
+    }
+
+    private synchronized MustacheFactory getFactory() {
+        if (this.factory == null) {
+            this.factory = new DefaultMustacheFactory(this.templateDirectory);
+        }
+        return this.factory;
+    }
+}
@@ -23,6 +23,9 @@ package io.projectcastle.blogengine;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.Locale;
 
@@ -36,8 +39,39 @@ public class Utils {
     public final static String YAML_SHORTDATE_FORMAT = "yyyy-MM-dd";
 
     public static String date2ComparableString(final Date inDate) {
-        final SimpleDateFormat sdf = new SimpleDateFormat(Utils.DATE_COMPARE_FORMAT, Locale.US);
-        return sdf.format(inDate);
+        return BlogDates.formatComparable(inDate);
+    }
+
+    /**
+     * Same order as comparing date2ComparableString results, as a number.
+     * The milliseconds in that string are not padded, so they are ranked in
+     * string order ("5" &lt; "50" &lt; "500" &lt; "6")
+     *
+     * @param inDate
+     *            the date
+     * @return key for sorting
+     */
+    public static long date2SortKey(final Date inDate) {
+        final LocalDateTime local = LocalDateTime.ofInstant(inDate.toInstant(), ZoneId.systemDefault());
+        long result = local.getYear();
+        result = (result * 1000) + local.getDayOfYear();
+        result = (result * 24) + local.getHour();
+        result = (result * 60) + local.getMinute();
+        result = (result * 60) + local.getSecond();
+        return (result * 1000) + Utils.MILLIS_RANK[local.getNano() / 1_000_000];
+    }
+
+    private static final int[] MILLIS_RANK = new int[1000];
+
+    static {
+        final String[] millis = new String[1000];
+        for (int i = 0; i < millis.length; i++) {
+            millis[i] = String.valueOf(i);
+        }
+        Arrays.sort(millis);
+        for (int rank = 0; rank < millis.length; rank++) {
+            Utils.MILLIS_RANK[Integer.parseInt(millis[rank])] = rank;
+        }
     }
 
     public static Date extractDateFromYaml(final Object dateCandidate) {
@@ -67,13 +101,29 @@ public class Utils {
     }
 
     /**
-     * Extract the text content of a HTML file or fragment 
+     * Extracts the plain text of an HTML string, cut to maxLength. Only as
+     * much of the HTML as the text needs gets parsed: a prefix is parsed
+     * first and extended when its text is too short. Prefixes end right
+     * before a tag, so the text of a prefix is the start of the text of the
+     * whole HTML
+     * 
      * @param htmlString the source String
      * @param maxLength the maximum length
      * @return the plain text without markup
      * 
      */
     public static String getTextFromHTML(String htmlString, int maxLength) {
+        int prefixLength = Math.max(2048, maxLength * 8);
+        while (prefixLength < htmlString.length()) {
+            final int tagStart = htmlString.lastIndexOf('<', prefixLength);
+            if (tagStart > 0) {
+                final String text = Jsoup.parse(htmlString.substring(0, tagStart)).body().text();
+                if (text.length() > maxLength) {
+                    return text.substring(0, maxLength);
+                }
+            }
+            prefixLength = prefixLength * 4;
+        }
         StringBuilder result = new StringBuilder();
         Document htmlDoc = Jsoup.parse(htmlString);
         if (htmlDoc.body().hasText()) {
@@ -0,0 +1,95 @@
+/** ========================================================================= *
+ * Copyright (C)  2016, 2018 Stephan H. Wissel ( https://wissel.net/ )        *
+ *                            All rights reserved.                            *
+ *                                                                            *
+ *  @author     Stephan H. Wissel (stw) <stephan@wissel.net>                  *
+ *                                       @notessensei                         *
+ * @version     1.0                                                           *
+ * ========================================================================== *
+ *                                                                            *
+ * Licensed under the  Apache License, Version 2.0  (the "License").  You may *
+ * not use this file except in compliance with the License.  You may obtain a *
+ * copy of the License at <http://www.apache.org/licenses/LICENSE-2.0>.       *
+ *                                                                            *
+ * Unless  required  by applicable  law or  agreed  to  in writing,  software *
+ * distributed under the License is distributed on an  "AS IS" BASIS, WITHOUT *
+ * WARRANTIES OR  CONDITIONS OF ANY KIND, either express or implied.  See the *
+ * License for the  specific language  governing permissions  and limitations *
+ * under the License.                                                         *
+ *                                                                            *
+ * ========================================================================== *
+ */
+package io.projectcastle.blogengine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Runs tricky HTML through the HtmlWhitespaceNormalizer, once in one write
+ * and once byte by byte, and compares with the expected output. Exits with
+ * 1 if any case fails
+ *
+ * @author stw
+ *
+ */
+public class HtmlWhitespaceNormalizerTest {
+
+    private static final String[][] CASES = {
+            // input, expected
+            { "<ul>\n    <li>one</li>\n\n    <li>two</li>\n</ul>\n", "<ul>\n<li>one</li>\n<li>two</li>\n</ul>\n" },
+            { "<p>text   with \t  blanks</p>", "<p>text with blanks</p>" },
+            { "<pre>  keep   this\n\n  too </pre>  after", "<pre>  keep   this\n\n  too </pre> after" },
+            { "<PRE>  upper   case </PRE>  after", "<PRE>  upper   case </PRE> after" },
+            { "<textarea>  a   b </textarea>", "<textarea>  a   b </textarea>" },
+            { "<script>  if (a < b) { x = \"</div>\"; }  </script>  <p>  x </p>",
+                    "<script>  if (a < b) { x = \"</div>\"; }  </script> <p> x </p>" },
+            { "<style> p  >  a { } </style>", "<style> p  >  a { } </style>" },
+            { "<a title=\"x > y\"   href='a>b'>  link  </a>", "<a title=\"x > y\"   href='a>b'> link </a>" },
+            { "<pre title=\"a > b\">  raw  </pre>", "<pre title=\"a > b\">  raw  </pre>" },
+            { "<!--  keep   this\n\n  comment -->   <p>", "<!--  keep   this\n\n  comment --> <p>" },
+            { "<!-- a -- b --->   after", "<!-- a -- b ---> after" },
+            { "<!DOCTYPE html>\n\n   <html>", "<!DOCTYPE html>\n<html>" },
+            { "<p>a  <  b and 1<2</p>", "<p>a < b and 1<2</p>" },
+            { "<p>x<   y</p>", "<p>x< y</p>" },
+            { "   leading and trailing   \n\n", "leading and trailing\n" } };
+
+    public static void main(final String[] args) throws IOException {
+        int failed = 0;
+        for (final String[] testCase : HtmlWhitespaceNormalizerTest.CASES) {
+            final String bulk = HtmlWhitespaceNormalizerTest.normalize(testCase[0], false);
+            final String single = HtmlWhitespaceNormalizerTest.normalize(testCase[0], true);
+            if (!testCase[1].equals(bulk) || !testCase[1].equals(single)) {
+                failed++;
+                System.out.println("FAILED: " + HtmlWhitespaceNormalizerTest.show(testCase[0]));
+                System.out.println("  expected:     " + HtmlWhitespaceNormalizerTest.show(testCase[1]));
+                System.out.println("  got:          " + HtmlWhitespaceNormalizerTest.show(bulk));
+                System.out.println("  byte by byte: " + HtmlWhitespaceNormalizerTest.show(single));
+            }
+        }
+        System.out.println((HtmlWhitespaceNormalizerTest.CASES.length - failed) + " of "
+                + HtmlWhitespaceNormalizerTest.CASES.length + " cases passed");
+        if (failed > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static String normalize(final String html, final boolean byteByByte) throws IOException {
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final byte[] bytes = html.getBytes(StandardCharsets.UTF_8);
+        try (HtmlWhitespaceNormalizer out = new HtmlWhitespaceNormalizer(result)) {
+            if (byteByByte) {
+                for (final byte b : bytes) {
+                    out.write(b);
+                }
+            } else {
+                out.write(bytes);
+            }
+        }
+        return new String(result.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String show(final String s) {
+        return "[" + s.replace("\n", "\\n").replace("\t", "\\t") + "]";
+    }
+}